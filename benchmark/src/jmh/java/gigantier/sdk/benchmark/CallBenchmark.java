@@ -0,0 +1,103 @@
+package gigantier.sdk.benchmark;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import gigantier.sdk.Gigantier;
+import gigantier.sdk.endpoints.Config;
+import gigantier.sdk.endpoints.NetworkCore;
+import gigantier.sdk.transport.OkHttpTransport;
+import gigantier.sdk.utils.Constants;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Whole call path, token lookup to delivered response, against a local http server. Uses the
+ * OkHttp transport, volley needs android classes not shadowed here. The local server adds a
+ * fixed delay per request, so compare scores across releases rather than reading them as is.
+ */
+@State(Scope.Benchmark)
+public class CallBenchmark {
+
+  private static final String CATALOG_URI = "/Product/list";
+
+  @Param({"10", "100"})
+  public int products;
+
+  private MockWebServer server;
+  private Gigantier gigantier;
+  private Map<String, Object> cart;
+
+  @Setup
+  public void setup() throws IOException {
+    final String token = Payloads.token();
+    final String catalog = Payloads.catalog(products);
+
+    Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return new MockResponse().setBody(request.getPath().endsWith(Constants.AUTH_URI) ? token : catalog);
+      }
+    });
+    server.start();
+
+    Config config = new Config();
+    config.clientId = "SOME_CLIENT_ID";
+    config.clientSecret = "SOME_CLIENT_SECRET";
+    config.host = server.getHostName() + ":" + server.getPort();
+    config.protocol = "http";
+
+    NetworkCore core = new NetworkCore.Builder(new Context())
+        .transport(new OkHttpTransport())
+        .deliveryExecutor(Runnable::run)
+        .diskCacheSize(0)
+        .build();
+    gigantier = new Gigantier(core, config);
+    cart = Payloads.cart(10);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    gigantier.shutdown();
+    server.shutdown();
+  }
+
+  @Benchmark
+  public JSONObject call() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<JSONObject> result = new AtomicReference<>();
+    final AtomicReference<String> error = new AtomicReference<>();
+
+    gigantier.call(CATALOG_URI, cart, response -> {
+      result.set(response);
+      done.countDown();
+    }, (code, msg) -> {
+      error.set(code + " - " + msg);
+      done.countDown();
+    });
+
+    if (!done.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Call timed out");
+    if (error.get() != null) throw new IllegalStateException(error.get());
+    return result.get();
+  }
+
+}
@@ -0,0 +1,138 @@
+package gigantier.sdk.benchmark;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import gigantier.sdk.Gigantier;
+import gigantier.sdk.auth.Token;
+import gigantier.sdk.auth.TokenStorage;
+import gigantier.sdk.endpoints.Config;
+import gigantier.sdk.endpoints.NetworkCore;
+import gigantier.sdk.transport.OkHttpTransport;
+import gigantier.sdk.utils.Constants;
+import gigantier.sdk.utils.Preferences;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * First call of a freshly built client, with a new transport and no stored token, with and
+ * without prewarming. Each iteration starts cold, so the score is a single shot time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class ColdStartBenchmark {
+
+  private static final String CATALOG_URI = "/Product/list";
+
+  @Param({"false", "true"})
+  public boolean prewarm;
+
+  private MockWebServer server;
+  private Gigantier gigantier;
+  private CountDownLatch tokenStored;
+
+  @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+  public void setup() throws IOException, InterruptedException {
+    final String token = Payloads.token();
+    final String catalog = Payloads.catalog(10);
+
+    Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if (!request.getPath().endsWith(Constants.AUTH_URI)) return new MockResponse().setBody(catalog);
+        // a request sent on a loopback connection right after a response stalls for the delayed
+        // ack (~40ms), which would dwarf what is measured; the call opens its own connection
+        return new MockResponse().setBody(token).setHeader("Connection", "close");
+      }
+    });
+    server.start();
+
+    Config config = new Config();
+    config.clientId = "SOME_CLIENT_ID";
+    config.clientSecret = "SOME_CLIENT_SECRET";
+    config.host = server.getHostName() + ":" + server.getPort();
+    config.protocol = "http";
+
+    // the default storage, signaling once the prewarmed app token is stored
+    Context context = new Context();
+    Preferences preferences = new Preferences(context);
+    tokenStored = new CountDownLatch(1);
+    config.tokenStorage = new TokenStorage() {
+      @Override
+      public Token load(String type) {
+        return preferences.load(type);
+      }
+
+      @Override
+      public void save(String type, Token token) {
+        preferences.save(type, token);
+        if (TokenStorage.APP.equals(type)) tokenStored.countDown();
+      }
+    };
+
+    NetworkCore core = new NetworkCore.Builder(context)
+        .transport(new OkHttpTransport())
+        .deliveryExecutor(Runnable::run)
+        .diskCacheSize(0)
+        .build();
+    gigantier = new Gigantier(core, config);
+
+    if (prewarm) {
+      // the app keeps starting meanwhile, until the token is ready
+      gigantier.prewarm();
+      if (!tokenStored.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Prewarm timed out");
+    }
+  }
+
+  @TearDown(org.openjdk.jmh.annotations.Level.Iteration)
+  public void tearDown() throws IOException {
+    gigantier.shutdown();
+    server.shutdown();
+  }
+
+  @Benchmark
+  public JSONObject firstCall() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<JSONObject> result = new AtomicReference<>();
+    final AtomicReference<String> error = new AtomicReference<>();
+
+    gigantier.call(CATALOG_URI, null, response -> {
+      result.set(response);
+      done.countDown();
+    }, (code, msg) -> {
+      error.set(code + " - " + msg);
+      done.countDown();
+    });
+
+    if (!done.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Call timed out");
+    if (error.get() != null) throw new IllegalStateException(error.get());
+    return result.get();
+  }
+
+}
@@ -0,0 +1,86 @@
+package gigantier.sdk.benchmark;
+
+import android.util.JsonReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import gigantier.sdk.endpoints.JsonBody;
+
+/**
+ * Json decoding of catalog responses, as a JSONObject and streamed with a typed decoder, and
+ * encoding of cart bodies.
+ */
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Param({"10", "100", "1000"})
+  public int products;
+
+  private byte[] catalog;
+  private Map<String, Object> cart;
+
+  @Setup
+  public void setup() {
+    catalog = Payloads.catalog(products).getBytes(UTF_8);
+    cart = Payloads.cart(products);
+  }
+
+  @Benchmark
+  public int decodeJsonObject() throws JSONException {
+    JSONArray items = new JSONObject(new String(catalog, UTF_8)).getJSONArray("products");
+    double total = 0;
+    for (int i = 0; i < items.length(); i++) total += items.getJSONObject(i).getDouble("price");
+    return (int) total;
+  }
+
+  @Benchmark
+  public int decodeStreaming() throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(catalog), UTF_8));
+    try {
+      double total = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!"products".equals(reader.nextName())) {
+          reader.skipValue();
+          continue;
+        }
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            if ("price".equals(reader.nextName())) total += reader.nextDouble();
+            else reader.skipValue();
+          }
+          reader.endObject();
+        }
+        reader.endArray();
+      }
+      reader.endObject();
+      return (int) total;
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return JsonBody.write(cart, null);
+  }
+
+}
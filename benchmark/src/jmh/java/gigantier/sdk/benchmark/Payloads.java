@@ -0,0 +1,60 @@
+package gigantier.sdk.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representative api payloads, generated so every run measures the same bytes.
+ */
+public class Payloads {
+
+  public static final String ACCESS_TOKEN = "SOME_ACCESS_TOKEN";
+
+  /**
+   * @return /Product/list like response with the given products
+   */
+  public static String catalog(final int products) {
+    StringBuilder json = new StringBuilder("{\"ok\":true,\"total\":").append(products).append(",\"products\":[");
+    for (int i = 0; i < products; i++) {
+      if (i > 0) json.append(',');
+      json.append("{\"id\":").append(i)
+          .append(",\"name\":\"Product ").append(i).append('"')
+          .append(",\"description\":\"Description of product ").append(i).append(", with some longer text.\"")
+          .append(",\"price\":").append(10 + i % 90).append('.').append(i % 100)
+          .append(",\"stock\":").append(i % 7 == 0 ? 0 : i % 50)
+          .append(",\"active\":").append(i % 3 != 0)
+          .append(",\"categories\":[").append(i % 10).append(',').append(10 + i % 5).append(']')
+          .append(",\"images\":[{\"url\":\"https://cdn.example.com/p/").append(i).append(".jpg\",\"width\":640,\"height\":480}]")
+          .append('}');
+    }
+    return json.append("]}").toString();
+  }
+
+  public static String token() {
+    return "{\"ok\":true,\"access_token\":\"" + ACCESS_TOKEN + "\",\"expires_in\":3600,\"scope\":\"Product\"}";
+  }
+
+  /**
+   * @return /Cart/update like body with the given items
+   */
+  public static Map<String, Object> cart(final int items) {
+    List<Map<String, Object>> lines = new ArrayList<>();
+    for (int i = 0; i < items; i++) {
+      Map<String, Object> line = new HashMap<>();
+      line.put("product_id", i);
+      line.put("quantity", 1 + i % 3);
+      line.put("price", 10.5 + i);
+      line.put("notes", "Item " + i);
+      lines.add(line);
+    }
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("cart_id", "c-12345");
+    body.put("currency", "EUR");
+    body.put("items", lines);
+    return body;
+  }
+
+}
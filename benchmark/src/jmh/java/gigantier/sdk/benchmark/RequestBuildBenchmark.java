@@ -0,0 +1,52 @@
+package gigantier.sdk.benchmark;
+
+import com.android.volley.Request;
+import com.android.volley.toolbox.ByteArrayPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Map;
+
+import gigantier.sdk.auth.TokenBody;
+import gigantier.sdk.endpoints.JsonBody;
+import gigantier.sdk.endpoints.RequestKey;
+
+/**
+ * Request body construction: token added to the caller body, json serialization and the
+ * request key used by the cache and deduplication.
+ */
+@State(Scope.Benchmark)
+public class RequestBuildBenchmark {
+
+  @Param({"1", "20", "200"})
+  public int items;
+
+  private final ByteArrayPool pool = new ByteArrayPool(64 * 1024);
+  private Map<String, Object> cart;
+
+  @Setup
+  public void setup() {
+    cart = Payloads.cart(items);
+  }
+
+  @Benchmark
+  public byte[] body() throws IOException {
+    return JsonBody.write(new TokenBody(cart, Payloads.ACCESS_TOKEN), pool);
+  }
+
+  @Benchmark
+  public byte[] bodyUnpooled() throws IOException {
+    return JsonBody.write(new TokenBody(cart, Payloads.ACCESS_TOKEN), null);
+  }
+
+  @Benchmark
+  public String requestKey() {
+    return RequestKey.of(Request.Method.POST, "/Cart/update", false, new TokenBody(cart, Payloads.ACCESS_TOKEN));
+  }
+
+}
@@ -0,0 +1,46 @@
+package gigantier.sdk.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import gigantier.sdk.auth.Token;
+import gigantier.sdk.auth.TokenStorage;
+import gigantier.sdk.auth.TokenStore;
+import gigantier.sdk.utils.Preferences;
+
+/**
+ * Token lookup and expiry checks, done at least once per call.
+ */
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+  private Preferences preferences;
+  private TokenStore tokenStore;
+
+  @Setup
+  public void setup() {
+    preferences = new Preferences(new Context());
+    preferences.save(TokenStorage.APP, new Token(Payloads.ACCESS_TOKEN, "", System.currentTimeMillis() + 3600000));
+    tokenStore = new TokenStore(preferences);
+  }
+
+  @Benchmark
+  public boolean preferencesLoad() {
+    return preferences.load(TokenStorage.APP).isValid();
+  }
+
+  @Benchmark
+  public boolean preferencesExpiryCheck() {
+    return preferences.isAppTokenExpired();
+  }
+
+  @Benchmark
+  public boolean tokenStoreLookup() {
+    return tokenStore.getAppToken().isValid();
+  }
+
+}
@@ -0,0 +1,176 @@
+package gigantier.sdk.loadtest;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gigantier.sdk.Gigantier;
+import gigantier.sdk.benchmark.Payloads;
+import gigantier.sdk.endpoints.Config;
+import gigantier.sdk.endpoints.NetworkCore;
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+import gigantier.sdk.transport.OkHttpTransport;
+
+/**
+ * Drives concurrent callers through the client against the stand-in server and reports
+ * throughput, latency percentiles, token requests and lost or duplicated callbacks.
+ */
+public class LoadTest {
+
+  private static final String URI = "/Product/list";
+  private static final long DUPLICATE_GRACE = 1000; // millis late callbacks are waited for
+
+  private final LoadTestConfig config;
+  private final StandInServer server;
+  private final Gigantier gigantier;
+
+  private final long[] latencies;
+  private final AtomicInteger[] callbacks;
+  private final AtomicInteger completed = new AtomicInteger();
+  private final Map<Integer, AtomicInteger> errors = new TreeMap<>();
+  private final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong lastEnd = new AtomicLong();
+
+  public LoadTest(LoadTestConfig config) throws Exception {
+    this.config = config;
+    this.server = new StandInServer(config);
+    server.start();
+
+    Config clientConfig = new Config();
+    clientConfig.clientId = "SOME_CLIENT_ID";
+    clientConfig.clientSecret = "SOME_CLIENT_SECRET";
+    clientConfig.authUri = config.authUri;
+    clientConfig.host = server.host();
+    clientConfig.protocol = "http";
+
+    // default delivery, hopping to the shadowed main looper like on a device
+    NetworkCore core = new NetworkCore.Builder(new Context()).transport(new OkHttpTransport()).build();
+    this.gigantier = new Gigantier(core, clientConfig);
+
+    int total = config.callers * config.calls;
+    this.latencies = new long[total];
+    this.callbacks = new AtomicInteger[total];
+    for (int i = 0; i < total; i++) callbacks[i] = new AtomicInteger();
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestConfig config = LoadTestConfig.parse(args);
+    LoadTest loadTest = new LoadTest(config);
+    try {
+      loadTest.run();
+      loadTest.report();
+    } finally {
+      loadTest.shutdown();
+    }
+    System.exit(0);
+  }
+
+  public void run() throws Exception {
+    if (config.authenticated) authenticate();
+
+    Thread[] callers = new Thread[config.callers];
+    for (int c = 0; c < callers.length; c++) {
+      final int caller = c;
+      callers[c] = new Thread(() -> {
+        for (int i = 0; i < config.calls; i++) {
+          if (!call(caller * config.calls + i)) break;
+        }
+      }, "caller-" + c);
+    }
+
+    for (Thread caller : callers) caller.start();
+    for (Thread caller : callers) caller.join();
+    Thread.sleep(DUPLICATE_GRACE);
+  }
+
+  public void shutdown() throws Exception {
+    gigantier.shutdown();
+    server.shutdown();
+  }
+
+  public void report() {
+    int total = latencies.length;
+    int lost = 0;
+    int duplicated = 0;
+    for (AtomicInteger count : callbacks) {
+      if (count.get() == 0) lost++;
+      else if (count.get() > 1) duplicated++;
+    }
+
+    long[] sorted = Arrays.copyOf(latencies, total);
+    Arrays.sort(sorted);
+    double seconds = (lastEnd.get() - firstStart.get()) / 1e9;
+
+    System.out.println(config);
+    System.out.printf("calls:        %d completed of %d%n", completed.get(), total);
+    System.out.printf("throughput:   %.1f calls/s%n", completed.get() / seconds);
+    System.out.printf("latency (ms): p50 %d, p90 %d, p99 %d, max %d%n", percentile(sorted, 50),
+        percentile(sorted, 90), percentile(sorted, 99), sorted[total - 1]);
+    System.out.printf("token hits:   %d%n", server.tokenHits());
+    System.out.printf("api hits:     %d (%d rejected with 401)%n", server.apiHits(), server.unauthorized());
+    System.out.printf("errors:       %s%n", errors);
+    System.out.printf("lost:         %d%n", lost);
+    System.out.printf("duplicated:   %d%n", duplicated);
+  }
+
+  /**
+   * @return false if the callback was not received in time
+   */
+  private boolean call(final int id) {
+    final CountDownLatch done = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    firstStart.accumulateAndGet(start, Math::min);
+
+    ResponseListener<Object> onResponse = response -> onCallback(id, start, done, 0);
+    ErrorListener onError = (code, msg) -> onCallback(id, start, done, code);
+
+    if (config.authenticated) gigantier.authenticatedCall(URI, Payloads.cart(1), onResponse::onResponse, onError);
+    else gigantier.call(URI, Payloads.cart(1), onResponse::onResponse, onError);
+
+    try {
+      return done.await(config.callTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void onCallback(final int id, final long start, final CountDownLatch done, final int errorCode) {
+    if (callbacks[id].incrementAndGet() > 1) return;
+
+    long end = System.nanoTime();
+    latencies[id] = TimeUnit.NANOSECONDS.toMillis(end - start);
+    lastEnd.accumulateAndGet(end, Math::max);
+    completed.incrementAndGet();
+
+    if (errorCode != 0) {
+      synchronized (errors) {
+        AtomicInteger count = errors.get(errorCode);
+        if (count == null) errors.put(errorCode, count = new AtomicInteger());
+        count.incrementAndGet();
+      }
+    }
+    done.countDown();
+  }
+
+  private void authenticate() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    gigantier.authenticate("user@example.com", "password", credential -> done.countDown(), (code, msg) -> {
+      throw new IllegalStateException("Cannot authenticate: " + code + " - " + msg);
+    });
+    if (!done.await(config.callTimeout, TimeUnit.MILLISECONDS)) throw new IllegalStateException("Cannot authenticate");
+  }
+
+  private static long percentile(final long[] sorted, final double percentile) {
+    int index = (int) Math.ceil(sorted.length * percentile / 100) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+
+}
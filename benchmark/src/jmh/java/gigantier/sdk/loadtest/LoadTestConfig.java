@@ -0,0 +1,54 @@
+package gigantier.sdk.loadtest;
+
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Load test settings, parsed from --name=value arguments.
+ */
+public class LoadTestConfig {
+
+  public int callers = 100; // concurrent callers
+  public int calls = 20; // calls per caller
+  public boolean authenticated = false; // authenticatedCall instead of call
+  public long latency = 50; // millis before each api response
+  public long authLatency = 200; // millis before each token response
+  public long bandwidth = 0; // response bytes per second, 0 for no limit
+  public double errorRate = 0; // share of api requests failing with 503
+  public double unauthorizedRate = 0; // share of api requests revoking their token with 401
+  public long tokenTtl = 5; // token lifetime in seconds, short to force expiry storms
+  public int products = 20; // products in each api response
+  public long callTimeout = 30000; // millis a callback is waited for before counting it lost
+  public String authUri = Constants.AUTH_URI;
+
+  public static LoadTestConfig parse(String[] args) {
+    LoadTestConfig config = new LoadTestConfig();
+    for (String arg : args) {
+      String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "true";
+      switch (pair[0]) {
+        case "callers": config.callers = Integer.parseInt(value); break;
+        case "calls": config.calls = Integer.parseInt(value); break;
+        case "authenticated": config.authenticated = Boolean.parseBoolean(value); break;
+        case "latency": config.latency = Long.parseLong(value); break;
+        case "auth-latency": config.authLatency = Long.parseLong(value); break;
+        case "bandwidth": config.bandwidth = Long.parseLong(value); break;
+        case "error-rate": config.errorRate = Double.parseDouble(value); break;
+        case "unauthorized-rate": config.unauthorizedRate = Double.parseDouble(value); break;
+        case "token-ttl": config.tokenTtl = Long.parseLong(value); break;
+        case "products": config.products = Integer.parseInt(value); break;
+        case "call-timeout": config.callTimeout = Long.parseLong(value); break;
+        default: throw new IllegalArgumentException("Unknown argument " + arg);
+      }
+    }
+    return config;
+  }
+
+  @Override
+  public String toString() {
+    return callers + " callers x " + calls + " calls" + (authenticated ? " (authenticated)" : "")
+        + ", latency " + latency + "ms, auth latency " + authLatency + "ms, bandwidth "
+        + (bandwidth > 0 ? bandwidth + "B/s" : "unlimited") + ", error rate " + errorRate
+        + ", 401 rate " + unauthorizedRate + ", token ttl " + tokenTtl + "s";
+  }
+
+}
@@ -0,0 +1,134 @@
+package gigantier.sdk.loadtest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import gigantier.sdk.benchmark.Payloads;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local api stand-in issuing short lived tokens and rejecting expired or unknown ones with 401,
+ * with configurable latency, bandwidth, error rate and random token revocation.
+ */
+public class StandInServer {
+
+  private final LoadTestConfig config;
+  private final MockWebServer server = new MockWebServer();
+  private final Map<String, Long> tokens = new ConcurrentHashMap<>(); // token -> expires at
+  private final AtomicInteger tokenHits = new AtomicInteger();
+  private final AtomicInteger apiHits = new AtomicInteger();
+  private final AtomicInteger unauthorized = new AtomicInteger();
+  private final AtomicInteger issued = new AtomicInteger();
+  private final Random random = new Random(42);
+  private final String body;
+
+  public StandInServer(LoadTestConfig config) {
+    this.config = config;
+    this.body = Payloads.catalog(config.products);
+    Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return respond(request);
+      }
+    });
+  }
+
+  public void start() throws IOException {
+    server.start();
+  }
+
+  public void shutdown() throws IOException {
+    server.shutdown();
+  }
+
+  public String host() {
+    return server.getHostName() + ":" + server.getPort();
+  }
+
+  public int tokenHits() {
+    return tokenHits.get();
+  }
+
+  public int apiHits() {
+    return apiHits.get();
+  }
+
+  public int unauthorized() {
+    return unauthorized.get();
+  }
+
+  private MockResponse respond(RecordedRequest request) {
+    JSONObject requestBody;
+    try {
+      requestBody = new JSONObject(request.getBody().readUtf8());
+    } catch (JSONException e) {
+      return new MockResponse().setResponseCode(400);
+    }
+
+    if (request.getPath().endsWith(config.authUri)) return token(requestBody);
+
+    apiHits.incrementAndGet();
+    if (chance(config.errorRate)) return throttle(new MockResponse().setResponseCode(503).setBody("{\"ok\":false}"));
+
+    String accessToken = requestBody.optString("access_token");
+    Long expiresAt = tokens.get(accessToken);
+    if (expiresAt == null || expiresAt < System.currentTimeMillis() || chance(config.unauthorizedRate)) {
+      tokens.remove(accessToken);
+      unauthorized.incrementAndGet();
+      return throttle(new MockResponse().setResponseCode(401).setBody("{\"ok\":false,\"error\":\"invalid_token\"}"));
+    }
+
+    return throttle(new MockResponse().setBody(body));
+  }
+
+  private MockResponse token(JSONObject requestBody) {
+    tokenHits.incrementAndGet();
+    sleep(config.authLatency);
+
+    String accessToken = "token-" + issued.incrementAndGet();
+    tokens.put(accessToken, System.currentTimeMillis() + config.tokenTtl * 1000);
+
+    StringBuilder json = new StringBuilder("{\"ok\":true,\"access_token\":\"").append(accessToken)
+        .append("\",\"expires_in\":").append(config.tokenTtl);
+    if (!"client_credentials".equals(requestBody.optString("grant_type"))) {
+      json.append(",\"refresh_token\":\"refresh-").append(issued.get()).append('"');
+    }
+    return new MockResponse().setBody(json.append('}').toString());
+  }
+
+  private MockResponse throttle(MockResponse response) {
+    if (config.latency > 0) response.setHeadersDelay(config.latency, TimeUnit.MILLISECONDS);
+    if (config.bandwidth > 0) response.throttleBody(config.bandwidth / 10, 100, TimeUnit.MILLISECONDS);
+    return response;
+  }
+
+  private boolean chance(double rate) {
+    if (rate <= 0) return false;
+    synchronized (random) {
+      return random.nextDouble() < rate;
+    }
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) return;
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
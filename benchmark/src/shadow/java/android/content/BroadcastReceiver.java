@@ -0,0 +1,10 @@
+package android.content;
+
+/**
+ * JVM shadow of the android broadcast receiver.
+ */
+public abstract class BroadcastReceiver {
+
+  public abstract void onReceive(Context context, Intent intent);
+
+}
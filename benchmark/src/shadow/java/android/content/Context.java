@@ -0,0 +1,72 @@
+package android.content;
+
+import android.net.ConnectivityManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM shadow of the android context, with in-memory shared preferences, temp dirs and only the
+ * sticky connectivity broadcast.
+ */
+public class Context {
+
+  public static final int MODE_PRIVATE = 0;
+  public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+  private final Map<String, SharedPreferences> preferences = new HashMap<>();
+  private File cacheDir;
+  private File filesDir;
+
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+    SharedPreferences sharedPreferences = preferences.get(name);
+    if (sharedPreferences == null) {
+      sharedPreferences = new MemorySharedPreferences();
+      preferences.put(name, sharedPreferences);
+    }
+    return sharedPreferences;
+  }
+
+  public synchronized File getCacheDir() {
+    if (cacheDir == null) {
+      cacheDir = new File(System.getProperty("java.io.tmpdir"), "gigantier-benchmark-" + System.nanoTime());
+      cacheDir.mkdirs();
+    }
+    return cacheDir;
+  }
+
+  public synchronized File getFilesDir() {
+    if (filesDir == null) {
+      filesDir = new File(System.getProperty("java.io.tmpdir"), "gigantier-benchmark-files-" + System.nanoTime());
+      filesDir.mkdirs();
+    }
+    return filesDir;
+  }
+
+  /**
+   * No system services on the JVM, callers treat the network as available.
+   */
+  public Object getSystemService(String name) {
+    return null;
+  }
+
+  /**
+   * Only the sticky connectivity broadcast is sent, at once, telling the network is available.
+   */
+  public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+    if (!filter.hasAction(ConnectivityManager.CONNECTIVITY_ACTION)) return null;
+
+    Intent intent = new Intent(ConnectivityManager.CONNECTIVITY_ACTION);
+    receiver.onReceive(this, intent);
+    return intent;
+  }
+
+  public void unregisterReceiver(BroadcastReceiver receiver) {
+  }
+
+}
@@ -0,0 +1,18 @@
+package android.content;
+
+/**
+ * JVM shadow of the android intent.
+ */
+public class Intent {
+
+  private final String action;
+
+  public Intent(String action) {
+    this.action = action;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+}
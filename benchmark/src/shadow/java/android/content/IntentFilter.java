@@ -0,0 +1,18 @@
+package android.content;
+
+/**
+ * JVM shadow of the android intent filter.
+ */
+public class IntentFilter {
+
+  private final String action;
+
+  public IntentFilter(String action) {
+    this.action = action;
+  }
+
+  public boolean hasAction(String action) {
+    return this.action.equals(action);
+  }
+
+}
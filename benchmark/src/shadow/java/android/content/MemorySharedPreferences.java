@@ -0,0 +1,106 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class MemorySharedPreferences implements SharedPreferences {
+
+  private final Map<String, Object> values = new HashMap<>();
+
+  @Override
+  public synchronized String getString(String key, String defValue) {
+    Object value = values.get(key);
+    return value != null ? (String) value : defValue;
+  }
+
+  @Override
+  public synchronized int getInt(String key, int defValue) {
+    Object value = values.get(key);
+    return value != null ? (Integer) value : defValue;
+  }
+
+  @Override
+  public synchronized long getLong(String key, long defValue) {
+    Object value = values.get(key);
+    return value != null ? (Long) value : defValue;
+  }
+
+  @Override
+  public synchronized boolean getBoolean(String key, boolean defValue) {
+    Object value = values.get(key);
+    return value != null ? (Boolean) value : defValue;
+  }
+
+  @Override
+  public synchronized boolean contains(String key) {
+    return values.containsKey(key);
+  }
+
+  @Override
+  public Editor edit() {
+    return new MemoryEditor();
+  }
+
+  private class MemoryEditor implements Editor {
+
+    private final Map<String, Object> changes = new HashMap<>();
+    private boolean clear;
+
+    @Override
+    public synchronized Editor putString(String key, String value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    @Override
+    public synchronized Editor putInt(String key, int value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    @Override
+    public synchronized Editor putLong(String key, long value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    @Override
+    public synchronized Editor putBoolean(String key, boolean value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    @Override
+    public synchronized Editor remove(String key) {
+      changes.put(key, null);
+      return this;
+    }
+
+    @Override
+    public synchronized Editor clear() {
+      clear = true;
+      return this;
+    }
+
+    @Override
+    public boolean commit() {
+      apply();
+      return true;
+    }
+
+    @Override
+    public synchronized void apply() {
+      synchronized (MemorySharedPreferences.this) {
+        if (clear) values.clear();
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+          if (change.getValue() == null) values.remove(change.getKey());
+          else values.put(change.getKey(), change.getValue());
+        }
+      }
+      changes.clear();
+      clear = false;
+    }
+
+  }
+
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+/**
+ * JVM shadow of the android shared preferences, limited to what the sdk uses.
+ */
+public interface SharedPreferences {
+
+  String getString(String key, String defValue);
+
+  int getInt(String key, int defValue);
+
+  long getLong(String key, long defValue);
+
+  boolean getBoolean(String key, boolean defValue);
+
+  boolean contains(String key);
+
+  Editor edit();
+
+  interface Editor {
+
+    Editor putString(String key, String value);
+
+    Editor putInt(String key, int value);
+
+    Editor putLong(String key, long value);
+
+    Editor putBoolean(String key, boolean value);
+
+    Editor remove(String key);
+
+    Editor clear();
+
+    boolean commit();
+
+    void apply();
+
+  }
+
+}
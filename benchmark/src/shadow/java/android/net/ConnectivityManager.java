@@ -0,0 +1,14 @@
+package android.net;
+
+/**
+ * JVM shadow of the android connectivity manager.
+ */
+public class ConnectivityManager {
+
+  public static final String CONNECTIVITY_ACTION = "android.net.conn.CONNECTIVITY_CHANGE";
+
+  public NetworkInfo getActiveNetworkInfo() {
+    return new NetworkInfo();
+  }
+
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * JVM shadow of the android handler, posting to its looper thread.
+ */
+public class Handler {
+
+  private final Looper looper;
+
+  public Handler(Looper looper) {
+    this.looper = looper;
+  }
+
+  public boolean post(Runnable runnable) {
+    looper.executor.execute(runnable);
+    return true;
+  }
+
+}
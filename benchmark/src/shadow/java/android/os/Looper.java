@@ -0,0 +1,32 @@
+package android.os;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JVM shadow of the android looper, the main looper being a single daemon thread.
+ */
+public class Looper {
+
+  private static final Looper MAIN = new Looper();
+
+  private volatile Thread thread;
+
+  final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    thread = new Thread(runnable, "main");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public static Looper getMainLooper() {
+    return MAIN;
+  }
+
+  /**
+   * @return main looper on its thread, null on any other
+   */
+  public static Looper myLooper() {
+    return Thread.currentThread() == MAIN.thread ? MAIN : null;
+  }
+
+}
@@ -0,0 +1,5 @@
+package android.util;
+
+public enum JsonToken {
+  BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+}
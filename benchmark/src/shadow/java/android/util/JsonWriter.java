@@ -0,0 +1,96 @@
+package android.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JVM shadow of the android json writer, backed by the gson one it was derived from.
+ */
+public final class JsonWriter implements Closeable, Flushable {
+
+  private final com.google.gson.stream.JsonWriter writer;
+
+  public JsonWriter(Writer out) {
+    this.writer = new com.google.gson.stream.JsonWriter(out);
+  }
+
+  public void setIndent(String indent) {
+    writer.setIndent(indent);
+  }
+
+  public void setLenient(boolean lenient) {
+    writer.setLenient(lenient);
+  }
+
+  public boolean isLenient() {
+    return writer.isLenient();
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    writer.beginArray();
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    writer.endArray();
+    return this;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    writer.beginObject();
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    writer.endObject();
+    return this;
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    writer.name(name);
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    writer.value(value);
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    writer.nullValue();
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    writer.value(value);
+    return this;
+  }
+
+  public JsonWriter value(double value) throws IOException {
+    writer.value(value);
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    writer.value(value);
+    return this;
+  }
+
+  public JsonWriter value(Number value) throws IOException {
+    writer.value(value);
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+}
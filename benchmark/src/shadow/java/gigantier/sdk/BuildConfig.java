@@ -0,0 +1,13 @@
+package gigantier.sdk;
+
+/**
+ * Stand-in for the build config generated by the android plugin.
+ */
+public final class BuildConfig {
+
+  public static final boolean DEBUG = false;
+  public static final String APPLICATION_ID = "gigantier.sdk";
+  public static final String BUILD_TYPE = "release";
+  public static final String VERSION_NAME = "benchmark";
+
+}
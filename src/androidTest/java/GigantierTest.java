@@ -1,24 +1,83 @@
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.test.InstrumentationRegistry;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.Matchers.is;
 
 import gigantier.sdk.BuildConfig;
 import gigantier.sdk.Gigantier;
+import gigantier.sdk.auth.Credential;
+import gigantier.sdk.auth.Token;
+import gigantier.sdk.auth.TokenStorage;
+import gigantier.sdk.batch.CallResult;
+import gigantier.sdk.batch.CallSpec;
+import gigantier.sdk.circuit.CircuitPolicy;
+import gigantier.sdk.circuit.CircuitState;
+import gigantier.sdk.endpoints.ApiException;
+import gigantier.sdk.endpoints.CallHandle;
+import gigantier.sdk.endpoints.CallOptions;
 import gigantier.sdk.endpoints.Config;
+import gigantier.sdk.endpoints.Decoder;
+import gigantier.sdk.endpoints.NetworkCore;
+import gigantier.sdk.endpoints.Priority;
+import gigantier.sdk.endpoints.RateLimit;
+import gigantier.sdk.endpoints.RetryPolicy;
+import gigantier.sdk.listeners.CircuitListener;
+import gigantier.sdk.listeners.OfflineListener;
+import gigantier.sdk.metrics.CallMetrics;
+import gigantier.sdk.offline.QueuedCall;
+import gigantier.sdk.paging.PageCursor;
+import gigantier.sdk.transport.OkHttpTransport;
+import gigantier.sdk.transport.Transport;
+import gigantier.sdk.transport.TransportCallback;
+import gigantier.sdk.transport.TransportRequest;
+import gigantier.sdk.utils.Clock;
 import gigantier.sdk.utils.Constants;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -37,6 +96,7 @@ public class GigantierTest {
   public static final int UNAUTHORIZED_STATUS_CODE = 401;
   public static final String CATEGORY_URI = "/Category/list";
   public static final String USER_URI = "/User/me";
+  public static final String CART_URI = "/Cart/add";
   public static final String USER_EMAIL = "test@foo.com";
   public static final String USER_PWD = "pasword";
   public static final String USER_NAME = "Test";
@@ -56,15 +116,7 @@ public class GigantierTest {
     server = new MockWebServer();
     server.start();
 
-    config = new Config();
-    config.clientId = "SOME_CLIENT_ID";
-    config.clientSecret = "SOME_CLIENT_SECRET";
-    config.application = TEST_APP;
-    config.scope = SCOPE;
-    config.version = API_VERSION;
-    config.host = server.getHostName() + ":" + server.getPort();
-    config.protocol = "http";
-
+    config = buildConfig(server);
     gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
   }
 
@@ -144,6 +196,106 @@ public class GigantierTest {
     });
   }
 
+  @Test
+  public void call_ok_okhttp_transport() throws Exception {
+    config.transport = new OkHttpTransport();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      basicRequestValidation(getRecordedRequest(), Constants.AUTH_URI);
+      basicRequestValidation(getRecordedRequest(), CATEGORY_URI);
+      assertThat(response.get("ok"), is(true));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void okhttp_transport_sends_more_than_five_requests_per_host() throws Exception {
+    config.transport = new OkHttpTransport();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    // each call is answered only once all of them have reached the server
+    int calls = 8;
+    CountDownLatch arrived = new CountDownLatch(calls);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString());
+          }
+          arrived.countDown();
+          arrived.await(5, TimeUnit.SECONDS);
+          return new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString());
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    });
+
+    CountDownLatch done = new CountDownLatch(calls);
+    for (int i = 0; i < calls; i++) {
+      gigantier.call(CATEGORY_URI, response -> done.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+    }
+
+    assertThat(done.await(3, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  public void call_decoded() throws Exception {
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    Decoder<List<String>> categoryNames = reader -> {
+      List<String> names = new ArrayList<>();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!reader.nextName().equals("categories")) {
+          reader.skipValue();
+          continue;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            if (reader.nextName().equals("name")) names.add(reader.nextString());
+            else reader.skipValue();
+          }
+          reader.endObject();
+        }
+        reader.endArray();
+      }
+      reader.endObject();
+      return names;
+    };
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, null, categoryNames, names -> responseListenerTemplate(callback, () -> {
+      assertThat(names.size(), is(1));
+      assertThat(names.get(0), is("First Category"));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void call_decoder_error() throws Exception {
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    // throws a NumberFormatException, the first name is "ok"
+    Decoder<Integer> broken = reader -> {
+      reader.beginObject();
+      return Integer.parseInt(reader.nextName());
+    };
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, null, broken,
+        response -> responseListenerTemplate(callback, () -> fail("Response ok, but must fail")),
+        (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+          assertThat(statusCode, is(-1));
+          assertThat(msg.contains("NumberFormatException"), is(true));
+        })));
+  }
+
   @Test
   public void call_renew_token() throws Exception {
     testTemplate(callback -> {
@@ -195,6 +347,667 @@ public class GigantierTest {
     });
   }
 
+  @Test
+  public void concurrent_calls_share_token_request() throws Exception {
+    final int calls = 5;
+    final AtomicInteger tokenRequests = new AtomicInteger();
+
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            tokenRequests.incrementAndGet();
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString());
+          }
+          return new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString());
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    });
+
+    final CountDownLatch signal = new CountDownLatch(calls);
+    for (int i = 0; i < calls; i++) {
+      gigantier.call(CATEGORY_URI, response -> signal.countDown(),
+          (statusCode, msg) -> fail(statusCode + " - " + msg));
+    }
+
+    signal.await(5, TimeUnit.SECONDS);
+    assertThat(signal.getCount(), is(0L));
+    assertThat(tokenRequests.get(), is(1));
+    assertThat(server.getRequestCount(), is(calls + 1));
+  }
+
+  @Test
+  public void tokens_written_behind_and_read_once() throws Exception {
+    CountingStorage storage = new CountingStorage();
+    config.tokenStorage = storage;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> tokenRequests = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(tokenApi(EXPIRES_IN, tokenRequests));
+
+    for (int i = 0; i < 3; i++) callCategory();
+
+    // the storage is read once and written once per credential, calls only hit memory
+    assertThat(tokenRequests.size(), is(1));
+    assertThat(storage.loads.get(), is(2));
+    assertThat(storage.saves.get(), is(1));
+    assertThat(storage.tokens.get(TokenStorage.APP).accessToken, is(ACCESS_TOKEN));
+
+    // a new client starts from the persisted token
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    callCategory();
+    assertThat(tokenRequests.size(), is(1));
+    assertThat(storage.loads.get(), is(4));
+  }
+
+  @Test
+  public void constructor_does_no_io() throws Exception {
+    List<Thread> loadThreads = Collections.synchronizedList(new ArrayList<>());
+    CountingStorage storage = new CountingStorage() {
+      @Override
+      public Token load(String type) {
+        loadThreads.add(Thread.currentThread());
+        return super.load(type);
+      }
+    };
+    CountingTransport transport = new CountingTransport(new OkHttpTransport());
+    config.tokenStorage = storage;
+    config.transport = transport;
+    config.refreshAhead = true;
+    config.diskCache = true;
+    config.offlineQueue = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    // refresh ahead reads the stored tokens, in background
+    awaitUntil(() -> storage.loads.get() == 2);
+    assertThat(loadThreads.contains(Thread.currentThread()), is(false));
+    assertThat(transport.executed.get(), is(0));
+    assertThat(server.getRequestCount(), is(0));
+    gigantier.shutdown();
+  }
+
+  @Test
+  public void prewarm_renews_stale_app_token() throws Exception {
+    CountingStorage storage = new CountingStorage();
+    storage.tokens.put(TokenStorage.APP, new Token(ACCESS_TOKEN, "", 1L));
+    config.tokenStorage = storage;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> tokenRequests = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(tokenApi(EXPIRES_IN, tokenRequests));
+
+    gigantier.prewarm();
+    awaitUntil(() -> storage.tokens.get(TokenStorage.APP).isValid());
+    assertThat(tokenRequests.size(), is(1));
+
+    // the first call finds the token ready
+    callCategory();
+    assertThat(tokenRequests.size(), is(1));
+    assertThat(server.getRequestCount(), is(2));
+  }
+
+  @Test
+  public void tokens_persisted_in_preferences() throws Exception {
+    List<Long> tokenRequests = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(tokenApi(EXPIRES_IN, tokenRequests));
+
+    callCategory();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    callCategory();
+
+    assertThat(tokenRequests.size(), is(1));
+    assertThat(server.getRequestCount(), is(3));
+  }
+
+  @Test
+  public void tokens_refreshed_ahead_of_expiry() throws Exception {
+    RecordingScheduler scheduler = new RecordingScheduler();
+    config.refreshAhead = true;
+    config.refreshAheadFraction = 0.5f;
+    config.refreshAheadJitter = 0;
+    config.refreshAheadExecutor = scheduler;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> tokenRequests = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(tokenApi(EXPIRES_IN, tokenRequests));
+
+    callCategory();
+
+    // scheduled halfway through the token lifetime, so calls never wait for an expired token
+    awaitUntil(() -> scheduler.delays.size() == 1);
+    long halfLifetime = EXPIRES_IN * 1000 / 2;
+    assertThat(scheduler.delays.get(0) > halfLifetime - 5000 && scheduler.delays.get(0) <= halfLifetime, is(true));
+
+    // once due, the token is renewed and the next renewal scheduled
+    scheduler.tasks.get(0).run();
+    awaitUntil(() -> tokenRequests.size() == 2 && scheduler.delays.size() == 2);
+
+    // no renewal is left scheduled once shut down
+    gigantier.shutdown();
+    assertThat(scheduler.futures.get(1).isCancelled(), is(true));
+    assertThat(scheduler.isShutdown(), is(false));
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void call_cached() throws Exception {
+    config.responseCacheSize = 64 * 1024;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, first -> gigantier.call(CATEGORY_URI,
+        response -> responseListenerTemplate(callback, () -> {
+          assertThat(server.getRequestCount(), is(2));
+          assertThat(gigantier.getResponseCache().hitCount(), is(1L));
+          assertThat(response.getJSONArray("categories").length(), is(1));
+        }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))),
+        (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void authenticate_blocking() throws Exception {
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUserTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUnauthorizedTokenResponseJson().toString())
+        .setResponseCode(UNAUTHORIZED_STATUS_CODE));
+
+    Credential credential = gigantier.executeAuthenticate(USER_EMAIL, USER_PWD);
+    assertThat(credential.accessToken, is(ACCESS_TOKEN));
+    assertThat(credential.refreshToken, is(REFRESH_TOKEN));
+
+    try {
+      gigantier.executeAuthenticate(USER_EMAIL, USER_PWD);
+      fail("Response ok, but must be unauthorized error");
+    } catch (ApiException e) {
+      assertThat(e.getCode(), is(UNAUTHORIZED_STATUS_CODE));
+    }
+  }
+
+  @Test
+  public void authenticated_call_not_cached() throws Exception {
+    config.responseCacheSize = 64 * 1024;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUserTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUserResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUserResponseJson().toString()));
+    authenticateUser();
+
+    // the user response is not served to the app call, nor taken from the cache by the next user call
+    testTemplate(callback -> gigantier.authenticatedCall(CATEGORY_URI, user -> gigantier.call(CATEGORY_URI,
+        app -> gigantier.authenticatedCall(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+          assertThat(app.getJSONArray("categories").length(), is(1));
+          assertThat(response.get("email"), is(USER_EMAIL));
+          assertThat(server.getRequestCount(), is(5));
+          assertThat(gigantier.getResponseCache().hitCount(), is(0L));
+        }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))),
+        (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))),
+        (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void call_stale_cache_updated() throws Exception {
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 1L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    // unique body, so entries left on disk by previous runs are not hit
+    Map<String, Object> body = new HashMap<>();
+    body.put("run", System.nanoTime());
+
+    JSONObject changed = ApiResponseBuilder.buildCategoryResponseJson().put("page", 2);
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(changed.toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+    Thread.sleep(10);
+
+    List<JSONObject> responses = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch updated = new CountDownLatch(2);
+    gigantier.call(CATEGORY_URI, body, response -> {
+      responses.add(response);
+      updated.countDown();
+    }, (statusCode, msg) -> fail(statusCode + " - " + msg));
+
+    assertThat(updated.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(responses.get(0).has("page"), is(false));
+    assertThat(responses.get(1).getInt("page"), is(2));
+    assertThat(server.getRequestCount(), is(3));
+  }
+
+  @Test
+  public void disk_cache_fresh_entry_served() throws Exception {
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("run", System.nanoTime());
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+
+    // a new client has no memory cache, the entry comes from disk
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+      assertThat(response.getJSONArray("categories").length(), is(1));
+      assertThat(arrivals.size(), is(1));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void disk_cache_revalidated_with_validators() throws Exception {
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 1L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("run", System.nanoTime());
+
+    String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString())
+        .setHeader("ETag", "\"v1\"").setHeader("Last-Modified", lastModified));
+    server.enqueue(new MockResponse().setResponseCode(304));
+    server.enqueue(new MockResponse().setResponseCode(304));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+
+    // stale entries are delivered and revalidated, not modified ones are not delivered again
+    List<JSONObject> responses = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 2; i++) {
+      Thread.sleep(10);
+      int requests = server.getRequestCount();
+      testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+        responses.add(response);
+      }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+      awaitUntil(() -> server.getRequestCount() == requests + 1);
+      Thread.sleep(100);
+    }
+
+    assertThat(responses.size(), is(2));
+    for (JSONObject response : responses) assertThat(response.getJSONArray("categories").length(), is(1));
+
+    getRecordedRequest();
+    assertEquals(null, getRecordedRequest().getHeader("If-None-Match"));
+    // the 304 responses carry no validators, the entry keeps the first ones
+    for (int i = 0; i < 2; i++) {
+      RecordedRequest revalidation = getRecordedRequest();
+      basicRequestValidation(revalidation, CATEGORY_URI);
+      assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+      assertEquals(lastModified, revalidation.getHeader("If-Modified-Since"));
+    }
+  }
+
+  @Test
+  public void response_caches_cleared_on_login() throws Exception {
+    config.responseCacheSize = 64 * 1024;
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("run", System.nanoTime());
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+    authenticateUser();
+    assertThat(gigantier.getResponseCache().size(), is(0L));
+
+    // a new client has no memory cache, and the disk entry is gone
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+      assertThat(arrivals.size(), is(2));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void logout_forgets_user_token_and_cached_responses() throws Exception {
+    CountingStorage storage = new CountingStorage();
+    config.tokenStorage = storage;
+    config.responseCacheSize = 64 * 1024;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    authenticateUser();
+    callCategory();
+    assertThat(storage.tokens.get(TokenStorage.USER).accessToken, is(ACCESS_TOKEN));
+    assertThat(gigantier.getResponseCache().size() > 0, is(true));
+
+    gigantier.logout();
+    assertThat(storage.tokens.get(TokenStorage.USER), is(Token.EMPTY));
+    assertThat(gigantier.getResponseCache().size(), is(0L));
+
+    callCategory();
+    assertThat(arrivals.size(), is(2));
+  }
+
+  @Test
+  public void call_nested_body() throws Exception {
+    Map<String, Object> item = new HashMap<>();
+    item.put("id", 1);
+    item.put("quantity", 2);
+    Map<String, Object> body = new HashMap<>();
+    body.put("items", Collections.singletonList(item));
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+      getRecordedRequest();
+      JSONObject requestBody = new JSONObject(getRecordedRequest().getBody().readUtf8());
+      assertEquals(ACCESS_TOKEN, requestBody.getString("access_token"));
+      assertThat(requestBody.getJSONArray("items").getJSONObject(0).getInt("quantity"), is(2));
+      assertThat(body.containsKey("access_token"), is(false));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void call_invalid_body() throws Exception {
+    Map<String, Object> body = new HashMap<>();
+    body.put("price", Double.NaN);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but the body cannot be written")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+      assertThat(statusCode, is(-1));
+      assertThat(msg.contains("NaN"), is(true));
+      assertThat(server.getRequestCount(), is(1));
+    })));
+  }
+
+  @Test
+  public void call_gzip() throws Exception {
+    config.gzipThreshold = 1;
+    config.acceptGzip = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    Buffer compressed = new Buffer();
+    BufferedSink sink = Okio.buffer(new GzipSink(compressed));
+    sink.writeUtf8(ApiResponseBuilder.buildCategoryResponseJson().toString());
+    sink.close();
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(compressed).setHeader("Content-Encoding", "gzip"));
+
+    // large enough to shrink once compressed
+    Map<String, Object> body = new HashMap<>();
+    body.put("filter", String.format("%0256d", 0));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+      getRecordedRequest();
+      RecordedRequest categoryRequest = getRecordedRequest();
+      assertEquals("gzip", categoryRequest.getHeader("Content-Encoding"));
+      assertEquals("gzip", categoryRequest.getHeader("Accept-Encoding"));
+
+      JSONObject categoriesRequestBody = new JSONObject(Okio.buffer(new GzipSource(categoryRequest.getBody())).readUtf8());
+      assertEquals(ACCESS_TOKEN, categoriesRequestBody.getString("access_token"));
+      assertThat(response.getJSONArray("categories").length(), is(1));
+      assertThat(gigantier.getCompressionStats().responseCount(), is(1L));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void call_metrics() throws Exception {
+    List<CallMetrics> reported = new ArrayList<>();
+    config.metricsListener = reported::add;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(reported.size(), is(1));
+      assertThat(reported.get(0).statusCode, is(200));
+      assertThat(reported.get(0).tokenRefreshed, is(true));
+      assertThat(reported.get(0).bytesReceived > 0, is(true));
+      assertThat(gigantier.getMetrics().tokenRefreshes(), is(1L));
+      assertThat(gigantier.getMetrics().histogram(CATEGORY_URI).count(), is(1L));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void call_metrics_status_and_first_byte() throws Exception {
+    List<CallMetrics> reported = Collections.synchronizedList(new ArrayList<>());
+    config.metricsListener = reported::add;
+    // volley reads the whole body before calling back, okhttp calls back at the headers
+    config.transport = new OkHttpTransport();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setResponseCode(201).setBodyDelay(300, TimeUnit.MILLISECONDS)
+        .setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(reported.size(), is(1));
+      assertThat(reported.get(0).statusCode, is(201));
+      assertThat(reported.get(0).isSuccess(), is(true));
+      assertThat(reported.get(0).timeToFirstByte < 250, is(true));
+      assertThat(reported.get(0).latency >= 300, is(true));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void delivery_executors_honored() throws Exception {
+    NamedExecutor clientDelivery = new NamedExecutor("client-delivery");
+    config.deliveryExecutor = clientDelivery;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildUnauthorizedTokenResponseJson().toString())
+        .setResponseCode(UNAUTHORIZED_STATUS_CODE));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildAnotherTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+
+    // the token renewal and the retry are chained on network threads, only the result is delivered
+    BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+    gigantier.call(CATEGORY_URI, response -> threads.add(Thread.currentThread().getName()),
+        (statusCode, msg) -> threads.add(statusCode + " - " + msg));
+    assertThat(threads.poll(5, TimeUnit.SECONDS), is("client-delivery"));
+    assertThat(server.getRequestCount(), is(4));
+    assertThat(clientDelivery.executed.get(), is(1));
+
+    NamedExecutor callDelivery = new NamedExecutor("call-delivery");
+    CallOptions options = new CallOptions();
+    options.executor = callDelivery;
+    gigantier.call(CATEGORY_URI, null, options, response -> threads.add(Thread.currentThread().getName()),
+        (statusCode, msg) -> threads.add(statusCode + " - " + msg));
+    assertThat(threads.poll(5, TimeUnit.SECONDS), is("call-delivery"));
+    assertThat(callDelivery.executed.get(), is(1));
+    assertThat(clientDelivery.executed.get(), is(1));
+  }
+
+  @Test
+  public void call_blocking() throws Exception {
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    server.enqueue(new MockResponse().setResponseCode(500).setBody("{\"ok\":false}"));
+
+    JSONObject response = gigantier.execute(CATEGORY_URI, null);
+    assertThat(response.getJSONArray("categories").length(), is(1));
+
+    try {
+      gigantier.callAsync(CATEGORY_URI, null).get(5, TimeUnit.SECONDS);
+      fail("Response ok, but must fail");
+    } catch (ExecutionException e) {
+      assertThat(((ApiException) e.getCause()).getCode(), is(500));
+    }
+  }
+
+  @Test
+  public void pages_delivered_in_order() throws Exception {
+    List<Integer> offsets = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(pagedApi(5, 0, new HashSet<>(), offsets));
+
+    // the first page is answered last, after the prefetched one
+    PageCursor cursor = gigantier.pages(CATEGORY_URI, null, "categories", 2);
+    List<Integer> ids = new ArrayList<>();
+    while (cursor.hasNext()) ids.addAll(ids((JSONObject) nextPage(cursor)));
+
+    assertThat(ids, is(Arrays.asList(0, 1, 2, 3, 4)));
+    assertThat(new HashSet<>(offsets).size(), is(offsets.size()));
+  }
+
+  @Test
+  public void pages_last_page_detected() throws Exception {
+    List<Integer> offsets = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(pagedApi(4, -1, new HashSet<>(), offsets));
+
+    // a full last page cannot be told apart, the empty one after it ends the cursor
+    PageCursor cursor = gigantier.pages(CATEGORY_URI, null, "categories", 2);
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Arrays.asList(0, 1)));
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Arrays.asList(2, 3)));
+    assertThat(cursor.hasNext(), is(true));
+    assertThat(ids((JSONObject) nextPage(cursor)).size(), is(0));
+    assertThat(cursor.hasNext(), is(false));
+
+    try {
+      cursor.next(response -> { }, (statusCode, msg) -> { });
+      fail("Page requested, but must fail");
+    } catch (IllegalStateException e) {
+      // no more pages
+    }
+  }
+
+  @Test
+  public void pages_prefetch_limited() throws Exception {
+    config.pagePrefetch = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Integer> offsets = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(pagedApi(100, -1, new HashSet<>(), offsets));
+
+    // one page ahead of the one delivered, fetched while it is consumed
+    PageCursor cursor = gigantier.pages(CATEGORY_URI, null, "categories", 2);
+    nextPage(cursor);
+    awaitUntil(() -> offsets.size() == 3);
+
+    // the prefetched page is delivered without a request, which asks for the next one ahead
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Arrays.asList(2, 3)));
+    awaitUntil(() -> offsets.size() == 4);
+    List<Integer> requested = new ArrayList<>(offsets);
+    Collections.sort(requested);
+    assertThat(requested, is(Arrays.asList(0, 2, 4, 6)));
+    cursor.close();
+  }
+
+  @Test
+  public void pages_retried_after_error() throws Exception {
+    List<Integer> offsets = Collections.synchronizedList(new ArrayList<>());
+    Set<Integer> failures = Collections.synchronizedSet(new HashSet<>(Collections.singletonList(2)));
+    server.setDispatcher(pagedApi(5, -1, failures, offsets));
+
+    PageCursor cursor = gigantier.pages(CATEGORY_URI, null, "categories", 2);
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Arrays.asList(0, 1)));
+
+    // the failed page is delivered as an error, and fetched again by the next call
+    assertThat(nextPage(cursor), is(500));
+    assertThat(cursor.hasNext(), is(true));
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Arrays.asList(2, 3)));
+    assertThat(ids((JSONObject) nextPage(cursor)), is(Collections.singletonList(4)));
+    assertThat(cursor.hasNext(), is(false));
+    assertThat(Collections.frequency(offsets, 2), is(2));
+  }
+
+  @Test
+  public void call_all_ok() throws Exception {
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString()));
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    }
+
+    List<CallSpec> specs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) specs.add(new CallSpec(CATEGORY_URI));
+
+    testTemplate(callback -> gigantier.callAll(specs, 2, results -> responseListenerTemplate(callback, () -> {
+      assertThat(results.size(), is(3));
+      for (CallResult result : results) assertThat(result.isSuccess(), is(true));
+      assertThat(server.getRequestCount(), is(4));
+    })));
+  }
+
+  @Test
+  public void call_all_large_batch_token_error() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500));
+
+    // the token request fails, every call fails at once without growing the stack
+    List<CallSpec> specs = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) specs.add(new CallSpec(CATEGORY_URI));
+
+    testTemplate(callback -> gigantier.callAll(specs, 1, results -> responseListenerTemplate(callback, () -> {
+      assertThat(results.size(), is(20000));
+      for (CallResult result : results) assertThat(result.errorCode, is(500));
+      assertThat(server.getRequestCount(), is(1));
+    })));
+  }
+
+  @Test
+  public void call_all_calls_traced_with_deadline() throws Exception {
+    List<CallMetrics> reported = Collections.synchronizedList(new ArrayList<>());
+    config.metricsListener = reported::add;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    server.setDispatcher(itemApi(new ArrayList<>()));
+    callCategory();
+    reported.clear();
+
+    // the deadline applies to every call, the one of the slow call expires
+    CallOptions options = new CallOptions();
+    options.deadline = 150;
+    List<CallSpec> specs = Arrays.asList(new CallSpec(CATEGORY_URI, item("fast")), new CallSpec(CATEGORY_URI, item("first")),
+        new CallSpec(CATEGORY_URI, item("other")));
+
+    testTemplate(callback -> gigantier.callAll(specs, 3, options, results -> responseListenerTemplate(callback, () -> {
+      assertThat(results.get(0).isSuccess(), is(true));
+      assertThat(results.get(1).errorCode, is(Constants.ERROR_DEADLINE_EXCEEDED));
+      assertThat(results.get(2).isSuccess(), is(true));
+      assertThat(reported.size(), is(3));
+      assertThat(gigantier.getMetrics().histogram(CATEGORY_URI).count(), is(4L));
+    })));
+  }
+
+  @Test
+  public void call_all_canceled() throws Exception {
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(itemApi(sent));
+    callCategory();
+
+    List<CallSpec> specs = Arrays.asList(new CallSpec(CATEGORY_URI, item("first")), new CallSpec(CATEGORY_URI, item("next")));
+    gigantier.callAll(specs, 1, new CallOptions(TEST_APP), results -> fail("Batch completed, but it was canceled"));
+    awaitUntil(() -> sent.size() == 2);
+    gigantier.cancelAll(TEST_APP);
+
+    // the call in flight is dropped and the next one is never sent
+    Thread.sleep(500);
+    assertThat(sent, is(Arrays.asList("", "first")));
+  }
+
+  @Test
+  public void call_deadline_exceeded() throws Exception {
+    config.callDeadline = 200;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+
+    server.enqueue(new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString())
+        .setBodyDelay(2, TimeUnit.SECONDS));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but deadline must be exceeded")), (statusCode, msg) -> errorListenerTemplate(callback, () ->
+        assertThat(statusCode, is(Constants.ERROR_DEADLINE_EXCEEDED)))));
+  }
+
   @Test
   public void authenticated_call_ok() throws Exception {
     testTemplate(callback -> {
@@ -283,11 +1096,1132 @@ public class GigantierTest {
     });
   }
 
+  @Test
+  public void rate_limit_paces_calls() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.rateLimits.put(CATEGORY_URI, new RateLimit(10, 1));
+    config.maxRateLimitedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    callCategory();
+
+    // the burst is a single call, then the bucket refills a token every 100ms
+    for (int i = 0; i < 3; i++) {
+      clock.advance(50);
+      CountDownLatch sent = new CountDownLatch(1);
+      gigantier.call(CATEGORY_URI, response -> sent.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+      callCategoryRateLimited();
+
+      clock.advance(50);
+      assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+    }
+    assertThat(arrivals, is(Arrays.asList(0L, 100L, 200L, 300L)));
+  }
+
+  @Test
+  public void rate_limit_rejects_when_too_many_wait() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.rateLimits.put(CATEGORY_URI, new RateLimit(1, 1));
+    config.maxRateLimitedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    AtomicInteger responses = new AtomicInteger();
+    List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      gigantier.call(CATEGORY_URI, response -> {
+        responses.incrementAndGet();
+        done.countDown();
+      }, (statusCode, msg) -> {
+        errors.add(statusCode);
+        done.countDown();
+      });
+    }
+
+    // one call sent at once, one waiting for the next token and the last one rejected
+    awaitUntil(() -> responses.get() == 1 && errors.size() == 1);
+    assertThat(errors.get(0), is(Constants.ERROR_RATE_LIMITED));
+    assertThat(arrivals.size(), is(1));
+
+    clock.advance(1000);
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(responses.get(), is(2));
+    assertThat(arrivals, is(Arrays.asList(0L, 1000L)));
+  }
+
+  @Test
+  public void rate_limit_frees_place_of_canceled_call() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.rateLimits.put(CATEGORY_URI, new RateLimit(1, 1));
+    config.maxRateLimitedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    callCategory();
+
+    // waits for the next token, until canceled
+    CallHandle waiting = gigantier.call(CATEGORY_URI, response -> fail("Response ok, but the call was canceled"),
+        (statusCode, msg) -> fail("Error " + statusCode + ", but the call was canceled"));
+    callCategoryRateLimited();
+    waiting.cancel();
+
+    CountDownLatch sent = new CountDownLatch(1);
+    gigantier.call(CATEGORY_URI, response -> sent.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+    clock.advance(1000);
+    assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals, is(Arrays.asList(0L, 1000L)));
+  }
+
+  @Test
+  public void rate_limit_pauses_on_retry_after() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.maxRateLimitedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(Collections.singletonList(
+        new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"))), arrivals));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must be rate limited")), (statusCode, msg) -> errorListenerTemplate(callback, () ->
+        assertThat(statusCode, is(429)))));
+
+    // still paused a milli before the second is up
+    clock.advance(999);
+    CountDownLatch sent = new CountDownLatch(1);
+    gigantier.call(CATEGORY_URI, response -> sent.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+    callCategoryRateLimited();
+
+    clock.advance(1);
+    assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals, is(Arrays.asList(0L, 1000L)));
+  }
+
+  @Test
+  public void rate_limit_slows_down_on_429() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.rateLimits.put(CATEGORY_URI, new RateLimit(10, 1));
+    config.maxRateLimitedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(Collections.singletonList(new MockResponse().setResponseCode(429))),
+        arrivals));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must be rate limited")), (statusCode, msg) -> errorListenerTemplate(callback, () ->
+        assertThat(statusCode, is(429)))));
+
+    // the rate is halved, a token every 200ms instead of 100ms
+    clock.advance(150);
+    CountDownLatch sent = new CountDownLatch(1);
+    gigantier.call(CATEGORY_URI, response -> sent.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+    callCategoryRateLimited();
+
+    clock.advance(50);
+    assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals, is(Arrays.asList(0L, 200L)));
+  }
+
+  @Test
+  public void circuit_opens_on_errors_and_fails_fast() throws Exception {
+    CircuitStates states = new CircuitStates();
+    config.circuitPolicy = circuitPolicy(4);
+    config.circuitListener = states;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(serverErrors(2), arrivals));
+
+    // two errors out of four calls reach the error rate once minCalls are made
+    for (int i = 0; i < 4; i++) {
+      assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.CLOSED));
+      callCategory();
+    }
+    assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.OPEN));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but the circuit is open")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+      assertThat(statusCode, is(Constants.ERROR_CIRCUIT_OPEN));
+      assertThat(arrivals.size(), is(4));
+    })));
+    awaitUntil(() -> states.of(CATEGORY_URI).equals(Collections.singletonList(CircuitState.OPEN)));
+  }
+
+  @Test
+  public void circuit_listener_called_on_delivery_executor() throws Exception {
+    BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+    config.deliveryExecutor = new NamedExecutor("client-delivery");
+    config.circuitPolicy = circuitPolicy(1);
+    config.circuitListener = (uri, state) -> threads.add(Thread.currentThread().getName());
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    server.setDispatcher(timedApi(serverErrors(1), new ArrayList<>()));
+
+    callCategory();
+    assertThat(threads.poll(5, TimeUnit.SECONDS), is("client-delivery"));
+  }
+
+  @Test
+  public void circuit_opens_on_slow_calls() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.circuitPolicy = circuitPolicy(2);
+    config.circuitPolicy.slowCallDuration = 100;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    Dispatcher api = timedApi(new LinkedList<>(), new ArrayList<>());
+
+    // every answer takes 200ms on the clock
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        clock.advance(200);
+        return api.dispatch(request);
+      }
+    });
+
+    callCategory();
+    callCategory();
+
+    assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.OPEN));
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but the circuit is open")), (statusCode, msg) -> errorListenerTemplate(callback, () ->
+        assertThat(statusCode, is(Constants.ERROR_CIRCUIT_OPEN)))));
+  }
+
+  @Test
+  public void circuit_probes_with_capped_backoff() throws Exception {
+    ManualClock clock = new ManualClock();
+    CircuitStates states = new CircuitStates();
+    config.clock = clock;
+    config.circuitPolicy = circuitPolicy(2);
+    config.circuitPolicy.openDuration = 500;
+    config.circuitPolicy.openDurationMultiplier = 3;
+    config.circuitPolicy.maxOpenDuration = 1000;
+    config.circuitListener = states;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(serverErrors(3), arrivals));
+
+    callCategory();
+    callCategory();
+    assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.OPEN));
+
+    // the probe fails, opening the circuit for 1500ms capped to 1000ms
+    clock.advance(500);
+    callCategory();
+    assertThat(arrivals.size(), is(3));
+    assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.OPEN));
+
+    clock.advance(999);
+    callCategory();
+    assertThat(arrivals.size(), is(3));
+
+    // the probe succeeds and closes it
+    clock.advance(1);
+    callCategory();
+    assertThat(arrivals.size(), is(4));
+    assertThat(gigantier.getCircuitBreakers().getState(CATEGORY_URI), is(CircuitState.CLOSED));
+
+    awaitUntil(() -> states.of(CATEGORY_URI).size() == 5);
+    assertThat(states.of(CATEGORY_URI), is(Arrays.asList(CircuitState.OPEN, CircuitState.HALF_OPEN,
+        CircuitState.OPEN, CircuitState.HALF_OPEN, CircuitState.CLOSED)));
+  }
+
+  @Test
+  public void circuit_checked_when_request_leaves_rate_limiter() throws Exception {
+    ManualClock clock = new ManualClock();
+    config.clock = clock;
+    config.circuitPolicy = circuitPolicy(1);
+    config.rateLimits.put(CATEGORY_URI, new RateLimit(4, 1));
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(serverErrors(1), arrivals));
+
+    // the second call waits for quota while the first one opens the circuit
+    List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      gigantier.call(CATEGORY_URI, response -> fail("Response ok, but must fail"), (statusCode, msg) -> {
+        errors.add(statusCode);
+        done.countDown();
+      });
+    }
+
+    awaitUntil(() -> errors.size() == 1);
+    clock.advance(250);
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(errors, is(Arrays.asList(500, Constants.ERROR_CIRCUIT_OPEN)));
+    assertThat(arrivals.size(), is(1));
+  }
+
+  @Test
+  public void deduplicated_calls_share_response() throws Exception {
+    config.deduplicateRequests = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(Collections.singletonList(new MockResponse()
+        .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+        .setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()))), arrivals));
+
+    List<JSONObject> responses = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      gigantier.call(CATEGORY_URI, response -> {
+        responses.add(response);
+        done.countDown();
+      }, (statusCode, msg) -> fail(statusCode + " - " + msg));
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals.size(), is(1));
+    for (JSONObject response : responses) assertThat(response.getBoolean("ok"), is(true));
+    assertThat(gigantier.getDeduplicatedCount(), is(2L));
+    assertThat(gigantier.getMetrics().deduplicated(), is(2L));
+
+    // the request is no longer in flight, so the next call is sent
+    callCategory();
+    assertThat(arrivals.size(), is(2));
+  }
+
+  @Test
+  public void deduplicated_calls_keep_credentials_apart() throws Exception {
+    config.deduplicateRequests = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    Queue<MockResponse> responses = new LinkedList<>();
+    for (int i = 0; i < 2; i++) {
+      responses.add(new MockResponse().setHeadersDelay(300, TimeUnit.MILLISECONDS)
+          .setBody(ApiResponseBuilder.buildCategoryResponseJson().toString()));
+    }
+    server.setDispatcher(timedApi(responses, arrivals));
+    authenticateUser();
+
+    // same uri and body, but one with the app token and the other with the user token
+    CountDownLatch done = new CountDownLatch(2);
+    gigantier.call(CATEGORY_URI, response -> done.countDown(), (statusCode, msg) -> fail(statusCode + " - " + msg));
+    gigantier.authenticatedCall(CATEGORY_URI, response -> done.countDown(),
+        (statusCode, msg) -> fail(statusCode + " - " + msg));
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals.size(), is(2));
+    assertThat(gigantier.getMetrics().deduplicated(), is(0L));
+  }
+
+  @Test
+  public void deduplicated_calls_share_error() throws Exception {
+    config.deduplicateRequests = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(Collections.singletonList(new MockResponse()
+        .setHeadersDelay(300, TimeUnit.MILLISECONDS).setResponseCode(500))), arrivals));
+
+    List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      gigantier.call(CATEGORY_URI, response -> fail("Response ok, but must fail"), (statusCode, msg) -> {
+        errors.add(statusCode);
+        done.countDown();
+      });
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(arrivals.size(), is(1));
+    assertThat(errors, is(Arrays.asList(500, 500, 500)));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(arrivals.size(), is(2));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void retry_backs_off_exponentially() throws Exception {
+    config.retryPolicy.maxRetries = 2;
+    config.retryPolicy.initialBackoff = 200;
+    config.retryPolicy.jitter = 0;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(statusResponses(503, 503), arrivals));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(arrivals.size(), is(3));
+      assertThat(arrivals.get(1) - arrivals.get(0) >= 200, is(true));
+      assertThat(arrivals.get(2) - arrivals.get(1) >= 400, is(true));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void retry_stops_after_max_retries() throws Exception {
+    config.retryPolicy.maxRetries = 2;
+    config.retryPolicy.initialBackoff = 10;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(statusResponses(503, 503, 503, 503), arrivals));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must fail")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+      assertThat(statusCode, is(503));
+      assertThat(arrivals.size(), is(3));
+    })));
+  }
+
+  @Test
+  public void retry_ambiguous_failures_only_with_idempotency_key() throws Exception {
+    config.retryPolicy.maxRetries = 1;
+    config.retryPolicy.initialBackoff = 10;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    Queue<MockResponse> responses = new LinkedList<>();
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(responses, arrivals));
+
+    // the api may have processed these posts, they are not sent again
+    for (int code : new int[] {502, 504, -1}) {
+      synchronized (responses) {
+        responses.add(code == -1 ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+            : new MockResponse().setResponseCode(code));
+      }
+      int sent = arrivals.size();
+      testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+          fail("Response ok, but must fail")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+        assertThat(statusCode, is(code));
+        assertThat(arrivals.size(), is(sent + 1));
+      })));
+    }
+
+    // unless the api can drop the duplicate by its idempotency key
+    config.retryPolicy.idempotencyKey = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    for (int code : new int[] {502, 504, -1}) {
+      synchronized (responses) {
+        responses.add(code == -1 ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+            : new MockResponse().setResponseCode(code));
+      }
+      int sent = arrivals.size();
+      testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+        assertThat(arrivals.size(), is(sent + 2));
+      }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+    }
+  }
+
+  @Test
+  public void retry_honors_retry_after() throws Exception {
+    config.retryPolicy.maxRetries = 2;
+    config.retryPolicy.initialBackoff = 10;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    String inFourSeconds = format.format(new Date(System.currentTimeMillis() + 4000));
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(Arrays.asList(
+        new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"),
+        new MockResponse().setResponseCode(503).setHeader("Retry-After", inFourSeconds))), arrivals));
+
+    // seconds, then an http date, whose precision is a second, about 3s after the first retry
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(arrivals.size(), is(3));
+      assertThat(arrivals.get(1) - arrivals.get(0) >= 900, is(true));
+      assertThat(arrivals.get(2) - arrivals.get(1) >= 1500, is(true));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  @Test
+  public void retry_delay_jitter_and_retry_after() throws Exception {
+    RetryPolicy policy = new RetryPolicy();
+    policy.initialBackoff = 100;
+    policy.maxBackoff = 1000;
+    policy.jitter = 0.5f;
+
+    Set<Long> delays = new HashSet<>();
+    for (int i = 0; i < 50; i++) {
+      long delay = policy.delay(0, null);
+      assertThat(delay >= 50 && delay <= 100, is(true));
+      delays.add(delay);
+    }
+    assertThat(delays.size() > 1, is(true));
+
+    long capped = policy.delay(10, null);
+    assertThat(capped >= 500 && capped <= 1000, is(true));
+    assertThat(policy.delay(0, "0"), is(0L));
+    assertThat(policy.delay(0, "2"), is(1000L));
+    long unparsed = policy.delay(0, "soon");
+    assertThat(unparsed >= 50 && unparsed <= 100, is(true));
+
+    policy.honorRetryAfter = false;
+    long ignored = policy.delay(0, "0");
+    assertThat(ignored >= 50 && ignored <= 100, is(true));
+  }
+
+  @Test
+  public void retry_budget_exhausted() throws Exception {
+    config.retryPolicy.maxRetries = 3;
+    config.retryPolicy.initialBackoff = 10;
+    config.retryBudgetRatio = 0;
+    config.retryBudgetMax = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(statusResponses(503, 503, 503), arrivals));
+
+    // the budget allows a single retry, the next failures are not retried
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must fail")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+      assertThat(statusCode, is(503));
+      assertThat(arrivals.size(), is(2));
+    })));
+
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must fail")), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+      assertThat(statusCode, is(503));
+      assertThat(arrivals.size(), is(3));
+    })));
+  }
+
+  @Test
+  public void retry_keeps_idempotency_key() throws Exception {
+    config.retryPolicy.maxRetries = 1;
+    config.retryPolicy.initialBackoff = 10;
+    config.retryPolicy.idempotencyKey = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    server.setDispatcher(timedApi(statusResponses(503), new ArrayList<>()));
+
+    callCategory();
+    callCategory();
+
+    RecordedRequest tokenRequest = getRecordedRequest();
+    basicRequestValidation(tokenRequest, Constants.AUTH_URI);
+    String key = getRecordedRequest().getHeader(Constants.IDEMPOTENCY_KEY_HEADER);
+    assertNotEquals(null, key);
+    assertEquals(key, getRecordedRequest().getHeader(Constants.IDEMPOTENCY_KEY_HEADER));
+
+    // a new call gets a new key
+    String nextKey = getRecordedRequest().getHeader(Constants.IDEMPOTENCY_KEY_HEADER);
+    assertNotEquals(null, nextKey);
+    assertNotEquals(key, nextKey);
+  }
+
+  @Test
+  public void scheduler_sends_by_priority() throws Exception {
+    config.maxRequestsInFlight = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(itemApi(sent));
+    callCategory();
+
+    // the first call holds the only slot while the others queue
+    CountDownLatch done = new CountDownLatch(6);
+    String[] items = {"first", "prefetch", "background", "normal", "immediate", "normal again"};
+    Priority[] priorities = {Priority.NORMAL, Priority.PREFETCH, Priority.BACKGROUND, Priority.NORMAL,
+        Priority.IMMEDIATE, Priority.NORMAL};
+    for (int i = 0; i < items.length; i++) {
+      gigantier.call(CATEGORY_URI, item(items[i]), new CallOptions(null, priorities[i]), response -> done.countDown(),
+          (statusCode, msg) -> fail(statusCode + " - " + msg));
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(sent, is(Arrays.asList("", "first", "immediate", "normal", "normal again", "background", "prefetch")));
+  }
+
+  @Test
+  public void scheduler_rejects_when_queue_full() throws Exception {
+    config.maxRequestsInFlight = 1;
+    config.maxQueuedRequests = 1;
+    config.dropLowestPriority = false;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(itemApi(sent));
+    callCategory();
+
+    List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(3);
+    for (String item : Arrays.asList("first", "queued", "rejected")) {
+      gigantier.call(CATEGORY_URI, item(item), new CallOptions(null, Priority.IMMEDIATE), response -> done.countDown(),
+          (statusCode, msg) -> {
+            errors.add(statusCode);
+            done.countDown();
+          });
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(errors, is(Collections.singletonList(Constants.ERROR_REJECTED)));
+    assertThat(sent, is(Arrays.asList("", "first", "queued")));
+  }
+
+  @Test
+  public void scheduler_drops_lowest_priority_when_queue_full() throws Exception {
+    config.maxRequestsInFlight = 1;
+    config.maxQueuedRequests = 1;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), config);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(itemApi(sent));
+    callCategory();
+
+    Map<String, Integer> errors = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(3);
+    String[] items = {"first", "prefetch", "immediate"};
+    Priority[] priorities = {Priority.NORMAL, Priority.PREFETCH, Priority.IMMEDIATE};
+    for (int i = 0; i < items.length; i++) {
+      String item = items[i];
+      gigantier.call(CATEGORY_URI, item(item), new CallOptions(null, priorities[i]), response -> done.countDown(),
+          (statusCode, msg) -> {
+            errors.put(item, statusCode);
+            done.countDown();
+          });
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(errors.size(), is(1));
+    assertThat(errors.get("prefetch"), is(Constants.ERROR_REJECTED));
+    assertThat(sent, is(Arrays.asList("", "first", "immediate")));
+  }
+
+  @Test
+  public void network_core_shared_by_clients() throws Exception {
+    CountingTransport transport = new CountingTransport(new OkHttpTransport());
+    AtomicInteger delivered = new AtomicInteger();
+    NetworkCore core = new NetworkCore.Builder(InstrumentationRegistry.getContext())
+        .transport(transport)
+        .deliveryExecutor(runnable -> {
+          delivered.incrementAndGet();
+          runnable.run();
+        })
+        .diskCacheSize(1024 * 1024)
+        .build();
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    // unique body, so entries left on disk by previous runs are not hit
+    Map<String, Object> body = new HashMap<>();
+    body.put("run", System.nanoTime());
+
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    Gigantier first = new Gigantier(core, config);
+    testTemplate(callback -> first.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+
+    // the other client gets the response from the shared disk cache
+    Config otherConfig = buildConfig(server);
+    otherConfig.diskCache = true;
+    otherConfig.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    Gigantier second = new Gigantier(core, otherConfig);
+    testTemplate(callback -> second.call(CATEGORY_URI, body, response -> responseListenerTemplate(callback, () -> {
+      assertThat(response.getBoolean("ok"), is(true));
+      assertThat(arrivals.size(), is(1));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+
+    // both clients send through the shared transport, the first shutdown leaves it open
+    first.shutdown();
+    testTemplate(callback -> second.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+      assertThat(arrivals.size(), is(2));
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+
+    assertThat(transport.executed.get(), is(3));
+    assertThat(delivered.get() >= 3, is(true));
+    assertThat(core.getTransport() == transport, is(true));
+  }
+
+  @Test
+  public void network_core_overridden_by_config() throws Exception {
+    CountingTransport coreTransport = new CountingTransport(new OkHttpTransport());
+    AtomicInteger coreDelivered = new AtomicInteger();
+    NetworkCore core = new NetworkCore.Builder(InstrumentationRegistry.getContext())
+        .transport(coreTransport)
+        .deliveryExecutor(runnable -> {
+          coreDelivered.incrementAndGet();
+          runnable.run();
+        })
+        .diskCacheSize(0)
+        .build();
+    assertThat(core.hasDiskCache(), is(false));
+    assertEquals(null, core.getDiskCache());
+
+    List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(timedApi(new LinkedList<>(), arrivals));
+
+    // the client transport and executor replace the core ones, the disabled disk cache is skipped
+    CountingTransport transport = new CountingTransport(new OkHttpTransport());
+    AtomicInteger delivered = new AtomicInteger();
+    config.transport = transport;
+    config.deliveryExecutor = runnable -> {
+      delivered.incrementAndGet();
+      runnable.run();
+    };
+    config.diskCache = true;
+    config.cacheTtls.put(CATEGORY_URI, 60 * 1000L);
+    gigantier = new Gigantier(core, config);
+
+    callCategory();
+    callCategory();
+
+    assertThat(arrivals.size(), is(2));
+    assertThat(transport.executed.get(), is(3));
+    assertThat(coreTransport.executed.get(), is(0));
+    assertThat(delivered.get(), is(2));
+    assertThat(coreDelivered.get(), is(0));
+  }
+
+  @Test
+  public void offline_queue_replayed_by_new_client() throws Exception {
+    deleteOfflineQueue();
+
+    MockWebServer unavailable = new MockWebServer();
+    List<SentCall> failedSends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    for (String item : new String[] {"0", "1", "2"}) failures.put(item, 503);
+    unavailable.setDispatcher(offlineApi(failures, failedSends));
+    unavailable.start();
+
+    OfflineCalls first = new OfflineCalls();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(unavailable, first));
+    authenticateUser();
+    for (int i = 0; i < 3; i++) gigantier.queueAuthenticatedCall(CART_URI, item(String.valueOf(i)));
+    awaitUntil(() -> gigantier.getOfflineQueue().size() == 3 && !failedSends.isEmpty());
+    gigantier.shutdown();
+
+    // a new process loads the queue from disk and replays it once connected
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    server.setDispatcher(offlineApi(new ConcurrentHashMap<>(), sends));
+    OfflineCalls second = new OfflineCalls();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, second));
+    awaitUntil(() -> second.replayed.size() == 3);
+
+    assertThat(first.replayed.size(), is(0));
+    assertThat(first.failed.size(), is(0));
+    assertThat(second.failed.size(), is(0));
+    assertThat(gigantier.getOfflineQueue().size(), is(0));
+    for (int i = 0; i < 3; i++) {
+      QueuedCall call = second.replayed.get(i);
+      assertThat(call.body.get("item"), is(String.valueOf(i)));
+      assertThat(sends.get(i).item, is(String.valueOf(i)));
+      assertThat(sends.get(i).idempotencyKey, is(call.idempotencyKey));
+    }
+    assertThat(failedSends.get(0).idempotencyKey, is(second.replayed.get(0).idempotencyKey));
+    assertNotEquals(second.replayed.get(0).idempotencyKey, second.replayed.get(1).idempotencyKey);
+
+    gigantier.shutdown();
+    unavailable.shutdown();
+  }
+
+  @Test
+  public void offline_queue_identical_calls_not_merged() throws Exception {
+    deleteOfflineQueue();
+
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    failures.put("same", 503);
+    server.setDispatcher(offlineApi(failures, sends));
+
+    OfflineCalls calls = new OfflineCalls();
+    Config offlineConfig = offlineConfig(server, calls);
+    offlineConfig.offlineParallelism = 2;
+    offlineConfig.deduplicateRequests = true;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig);
+    authenticateUser();
+    gigantier.queueAuthenticatedCall(CART_URI, item("same"));
+    gigantier.queueAuthenticatedCall(CART_URI, item("same"));
+    awaitUntil(() -> gigantier.getOfflineQueue().size() == 2 && !sends.isEmpty());
+
+    // replayed together, each is sent with its own idempotency key
+    failures.remove("same");
+    gigantier.queueAuthenticatedCall(CART_URI, item("last"));
+    awaitUntil(() -> calls.replayed.size() == 3);
+
+    List<SentCall> accepted = new ArrayList<>();
+    for (SentCall send : sent(sends, "same")) if (send.accepted) accepted.add(send);
+    assertThat(accepted.size(), is(2));
+    assertNotEquals(accepted.get(0).idempotencyKey, accepted.get(1).idempotencyKey);
+    gigantier.shutdown();
+  }
+
+  @Test
+  public void offline_queue_keeps_transient_failures() throws Exception {
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    server.setDispatcher(offlineApi(failures, sends));
+
+    for (int code : new int[] {408, 429, 500, 503, -1}) {
+      deleteOfflineQueue();
+      String failing = "failing" + code;
+      failures.put(failing, code);
+
+      OfflineCalls calls = new OfflineCalls();
+      gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, calls));
+      authenticateUser();
+      gigantier.queueAuthenticatedCall(CART_URI, item(failing));
+      gigantier.queueAuthenticatedCall(CART_URI, item("next" + code));
+      awaitUntil(() -> sent(sends, failing).size() >= 2);
+
+      failures.remove(failing);
+      gigantier.queueAuthenticatedCall(CART_URI, item("last" + code));
+      awaitUntil(() -> calls.replayed.size() == 3);
+
+      assertThat(calls.failed.size(), is(0));
+      assertThat(calls.replayed.get(0).body.get("item"), is(failing));
+      assertThat(calls.replayed.get(1).body.get("item"), is("next" + code));
+      assertThat(calls.replayed.get(2).body.get("item"), is("last" + code));
+      for (SentCall send : sent(sends, failing)) {
+        assertThat(send.idempotencyKey, is(calls.replayed.get(0).idempotencyKey));
+      }
+      gigantier.shutdown();
+    }
+  }
+
+  @Test
+  public void offline_queue_drops_rejected_calls() throws Exception {
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    server.setDispatcher(offlineApi(failures, sends));
+
+    for (int code : new int[] {400, 401, 404}) {
+      deleteOfflineQueue();
+      String rejected = "rejected" + code;
+      failures.put(rejected, code);
+
+      OfflineCalls calls = new OfflineCalls();
+      gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, calls));
+      authenticateUser();
+      gigantier.queueAuthenticatedCall(CART_URI, item(rejected));
+      gigantier.queueAuthenticatedCall(CART_URI, item("next" + code));
+      awaitUntil(() -> calls.failed.size() == 1 && calls.replayed.size() == 1);
+
+      assertThat(calls.failed.get(0).body.get("item"), is(rejected));
+      assertThat(calls.failedCodes.get(0), is(code));
+      assertThat(calls.replayed.get(0).body.get("item"), is("next" + code));
+
+      // the rejected call is gone, later replays do not send it again
+      gigantier.queueAuthenticatedCall(CART_URI, item("last" + code));
+      awaitUntil(() -> calls.replayed.size() == 2);
+      // a 401 is sent again once, with a renewed user token
+      assertThat(sent(sends, rejected).size(), is(code == 401 ? 2 : 1));
+      assertThat(gigantier.getOfflineQueue().size(), is(0));
+      gigantier.shutdown();
+    }
+  }
+
+  @Test
+  public void offline_queue_drops_calls_when_user_token_rejected() throws Exception {
+    deleteOfflineQueue();
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    failures.put(Constants.AUTH_URI, 401);
+    server.setDispatcher(offlineApi(failures, sends));
+
+    // the expired user token cannot be renewed, like with a revoked refresh token
+    CountingStorage storage = new CountingStorage();
+    storage.tokens.put(TokenStorage.USER, new Token(ACCESS_TOKEN, REFRESH_TOKEN, 1L));
+    OfflineCalls calls = new OfflineCalls();
+    Config offlineConfig = offlineConfig(server, calls);
+    offlineConfig.tokenStorage = storage;
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig);
+    gigantier.queueAuthenticatedCall(CART_URI, item("first"));
+    gigantier.queueAuthenticatedCall(CART_URI, item("second"));
+    awaitUntil(() -> calls.failed.size() == 2);
+
+    assertThat(calls.failedCodes, is(Arrays.asList(401, 401)));
+    assertThat(sends.size(), is(0));
+    assertThat(gigantier.getOfflineQueue().size(), is(0));
+    gigantier.shutdown();
+  }
+
+  @Test
+  public void offline_queue_replays_call_without_body() throws Exception {
+    deleteOfflineQueue();
+    List<SentCall> sends = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+    failures.put("", 503);
+    server.setDispatcher(offlineApi(failures, sends));
+
+    OfflineCalls first = new OfflineCalls();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, first));
+    authenticateUser();
+    gigantier.queueAuthenticatedCall(CART_URI, null);
+    awaitUntil(() -> gigantier.getOfflineQueue().size() == 1 && !sends.isEmpty());
+    gigantier.shutdown();
+
+    // a new process reads the call back from disk
+    failures.remove("");
+    OfflineCalls second = new OfflineCalls();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, second));
+    awaitUntil(() -> second.replayed.size() == 1);
+
+    assertThat(second.failed.size(), is(0));
+    assertThat(second.replayed.get(0).body.isEmpty(), is(true));
+    assertThat(sends.get(1).accepted, is(true));
+    gigantier.shutdown();
+  }
+
+  @Test
+  public void offline_queue_rejects_unserializable_body() throws Exception {
+    deleteOfflineQueue();
+    gigantier = new Gigantier(InstrumentationRegistry.getContext(), offlineConfig(server, new OfflineCalls()));
+
+    Map<String, Object> body = item("nan");
+    body.put("price", Double.NaN);
+    try {
+      gigantier.queueAuthenticatedCall(CART_URI, body);
+      fail("Queued, but must fail");
+    } catch (IllegalArgumentException e) {
+      assertThat(gigantier.getOfflineQueue().size(), is(0));
+    }
+    gigantier.shutdown();
+  }
+
   @NonNull
   private RecordedRequest getRecordedRequest() throws Exception {
     return server.takeRequest(1, TimeUnit.SECONDS);
   }
 
+  private Config buildConfig(MockWebServer apiServer) {
+    Config config = new Config();
+    config.clientId = "SOME_CLIENT_ID";
+    config.clientSecret = "SOME_CLIENT_SECRET";
+    config.application = TEST_APP;
+    config.scope = SCOPE;
+    config.version = API_VERSION;
+    config.host = apiServer.getHostName() + ":" + apiServer.getPort();
+    config.protocol = "http";
+    return config;
+  }
+
+  private Config offlineConfig(MockWebServer apiServer, OfflineListener listener) {
+    Config offlineConfig = buildConfig(apiServer);
+    offlineConfig.offlineQueue = true;
+    offlineConfig.offlineParallelism = 1;
+    offlineConfig.offlineListener = listener;
+    return offlineConfig;
+  }
+
+  /**
+   * Api answering token requests with a user token, or the status of the auth uri in failures, and
+   * calls with the status their item fails with, 200 if none; -1 drops the connection. Calls are
+   * recorded as sent, with an empty item if none.
+   */
+  private Dispatcher offlineApi(final Map<String, Integer> failures, final List<SentCall> sends) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            Integer tokenStatus = failures.get(Constants.AUTH_URI);
+            if (tokenStatus != null) return new MockResponse().setResponseCode(tokenStatus).setBody("{\"ok\":false}");
+            return new MockResponse().setBody(ApiResponseBuilder.buildUserTokenResponseJson().toString());
+          }
+
+          String item = new JSONObject(request.getBody().readUtf8()).optString("item");
+          Integer status = failures.get(item);
+          sends.add(new SentCall(item, request.getHeader(Constants.IDEMPOTENCY_KEY_HEADER), status == null));
+
+          if (status == null) return new MockResponse().setBody(new JSONObject().put("ok", true).toString());
+          if (status == -1) return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+          return new MockResponse().setResponseCode(status).setBody(new JSONObject().put("ok", false).toString());
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    };
+  }
+
+  /**
+   * Api answering token requests with an app token valid for the given seconds and calls with a
+   * category list. Arrival millis of the token requests are recorded.
+   */
+  private Dispatcher tokenApi(final long expiresIn, final List<Long> tokenRequests) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            tokenRequests.add(SystemClock.elapsedRealtime());
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson()
+                .put("expires_in", expiresIn).toString());
+          }
+          return new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString());
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    };
+  }
+
+  /**
+   * Api answering token requests with an app token and calls with the next of the given
+   * responses, a category list once they run out. Arrival millis of the calls, on the config
+   * clock, are recorded.
+   */
+  private Dispatcher timedApi(final Queue<MockResponse> responses, final List<Long> arrivals) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString());
+          }
+
+          arrivals.add(config.clock.now());
+          MockResponse response;
+          synchronized (responses) {
+            response = responses.poll();
+          }
+          return response != null ? response : new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString());
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    };
+  }
+
+  /**
+   * Api answering token requests with an app token and calls with the page of the total items
+   * at their offset and limit, each item an object with its index as id. The page at
+   * delayedOffset is answered after 300ms, the offsets in failures fail once with a 500. Offsets
+   * are recorded as requested.
+   */
+  private Dispatcher pagedApi(final int total, final int delayedOffset, final Set<Integer> failures,
+                              final List<Integer> offsets) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString());
+          }
+
+          JSONObject body = new JSONObject(request.getBody().readUtf8());
+          int offset = body.getInt(Constants.PAGE_OFFSET_PARAM);
+          int limit = body.getInt(Constants.PAGE_LIMIT_PARAM);
+          offsets.add(offset);
+          if (failures.remove(offset)) return new MockResponse().setResponseCode(500);
+
+          JSONArray items = new JSONArray();
+          for (int i = offset; i < Math.min(total, offset + limit); i++) items.put(new JSONObject().put("id", i));
+          MockResponse response = new MockResponse().setBody(new JSONObject().put("ok", true).put("categories", items).toString());
+          return offset == delayedOffset ? response.setHeadersDelay(300, TimeUnit.MILLISECONDS) : response;
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    };
+  }
+
+  private CircuitPolicy circuitPolicy(int minCalls) {
+    CircuitPolicy policy = new CircuitPolicy();
+    policy.windowSize = minCalls;
+    policy.minCalls = minCalls;
+    return policy;
+  }
+
+  private static Queue<MockResponse> serverErrors(int count) {
+    Queue<MockResponse> responses = new LinkedList<>();
+    for (int i = 0; i < count; i++) responses.add(new MockResponse().setResponseCode(500));
+    return responses;
+  }
+
+  private static Queue<MockResponse> statusResponses(int... statusCodes) {
+    Queue<MockResponse> responses = new LinkedList<>();
+    for (int statusCode : statusCodes) responses.add(new MockResponse().setResponseCode(statusCode));
+    return responses;
+  }
+
+  /**
+   * Calls the category list, waiting for its response or error.
+   */
+  private void callCategory() throws Exception {
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> {
+    })));
+  }
+
+  /**
+   * Calls the category list once a call waits for quota, so the rate limiter queue is full.
+   */
+  private void callCategoryRateLimited() throws Exception {
+    testTemplate(callback -> gigantier.call(CATEGORY_URI, response -> responseListenerTemplate(callback, () ->
+        fail("Response ok, but must be rate limited")), (statusCode, msg) -> errorListenerTemplate(callback, () ->
+        assertThat(statusCode, is(Constants.ERROR_RATE_LIMITED)))));
+  }
+
+  /**
+   * Api answering token requests with an app token and calls with a category list, the one of
+   * the item "first" after 300ms. Items of the calls are recorded as sent, empty if none.
+   */
+  private Dispatcher itemApi(final List<String> sent) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        try {
+          if (request.getPath().equals(config.buildPath(Constants.AUTH_URI))) {
+            return new MockResponse().setBody(ApiResponseBuilder.buildTokenResponseJson().toString());
+          }
+
+          String item = new JSONObject(request.getBody().readUtf8()).optString("item");
+          sent.add(item);
+          MockResponse response = new MockResponse().setBody(ApiResponseBuilder.buildCategoryResponseJson().toString());
+          return item.equals("first") ? response.setHeadersDelay(300, TimeUnit.MILLISECONDS) : response;
+        } catch (Exception e) {
+          return new MockResponse().setResponseCode(500);
+        }
+      }
+    };
+  }
+
+  /**
+   * Requests the next page of the cursor, waiting for it.
+   *
+   * @return the page, or the error code
+   */
+  private static Object nextPage(PageCursor cursor) throws Exception {
+    BlockingQueue<Object> result = new LinkedBlockingQueue<>();
+    cursor.next(result::add, (statusCode, msg) -> result.add(statusCode));
+    Object page = result.poll(5, TimeUnit.SECONDS);
+    if (page == null) fail("Page not delivered in time");
+    return page;
+  }
+
+  private static List<Integer> ids(JSONObject page) throws Exception {
+    List<Integer> ids = new ArrayList<>();
+    JSONArray items = page.getJSONArray("categories");
+    for (int i = 0; i < items.length(); i++) ids.add(items.getJSONObject(i).getInt("id"));
+    return ids;
+  }
+
+  private void authenticateUser() throws Exception {
+    testTemplate(callback -> gigantier.authenticate(USER_EMAIL, USER_PWD, response -> responseListenerTemplate(callback, () -> {
+    }), (statusCode, msg) -> errorListenerTemplate(callback, () -> fail(statusCode + " - " + msg))));
+  }
+
+  private void deleteOfflineQueue() {
+    File dir = new File(InstrumentationRegistry.getContext().getFilesDir(), Constants.OFFLINE_QUEUE_DIR);
+    File[] files = dir.listFiles();
+    if (files != null) for (File file : files) file.delete();
+  }
+
+  private static Map<String, Object> item(String item) {
+    Map<String, Object> body = new HashMap<>();
+    body.put("item", item);
+    return body;
+  }
+
+  private static List<SentCall> sent(List<SentCall> sends, String item) {
+    List<SentCall> sent = new ArrayList<>();
+    synchronized (sends) {
+      for (SentCall send : sends) if (send.item.equals(item)) sent.add(send);
+    }
+    return sent;
+  }
+
+  private void awaitUntil(TestCondition condition) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.met()) {
+      if (System.currentTimeMillis() > deadline) fail("Condition not met in time");
+      Thread.sleep(10);
+    }
+  }
+
   private void clearSharedPrefs(Context context) {
     SharedPreferences prefs = context.getSharedPreferences(Constants.PREFERENCES_NAME, Context.MODE_PRIVATE);
     SharedPreferences.Editor editor = prefs.edit();
@@ -346,4 +2280,142 @@ public class GigantierTest {
     void run() throws Exception;
   }
 
+  interface TestCondition {
+    boolean met() throws Exception;
+  }
+
+  static class SentCall {
+    final String item;
+    final String idempotencyKey;
+    final boolean accepted;
+
+    SentCall(String item, String idempotencyKey, boolean accepted) {
+      this.item = item;
+      this.idempotencyKey = idempotencyKey;
+      this.accepted = accepted;
+    }
+  }
+
+  static class OfflineCalls implements OfflineListener {
+    final List<QueuedCall> replayed = Collections.synchronizedList(new ArrayList<>());
+    final List<QueuedCall> failed = Collections.synchronizedList(new ArrayList<>());
+    final List<Integer> failedCodes = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void onReplayed(QueuedCall call, JSONObject response) {
+      replayed.add(call);
+    }
+
+    @Override
+    public void onFailed(QueuedCall call, int code, String msg) {
+      failed.add(call);
+      failedCodes.add(code);
+    }
+  }
+
+  static class CountingStorage implements TokenStorage {
+    final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    final AtomicInteger loads = new AtomicInteger();
+    final AtomicInteger saves = new AtomicInteger();
+
+    @Override
+    public Token load(String type) {
+      loads.incrementAndGet();
+      return tokens.get(type);
+    }
+
+    @Override
+    public void save(String type, Token token) {
+      saves.incrementAndGet();
+      tokens.put(type, token);
+    }
+  }
+
+  static class CountingTransport implements Transport {
+    final Transport transport;
+    final AtomicInteger executed = new AtomicInteger();
+
+    CountingTransport(Transport transport) {
+      this.transport = transport;
+    }
+
+    @Override
+    public void execute(TransportRequest request, TransportCallback callback) {
+      executed.incrementAndGet();
+      transport.execute(request, callback);
+    }
+
+    @Override
+    public void cancel(Object tag) {
+      transport.cancel(tag);
+    }
+  }
+
+  /**
+   * Records the scheduled tasks and their delays, which are never due, so tests run them at will.
+   */
+  static class RecordingScheduler extends ScheduledThreadPoolExecutor {
+    final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+    final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<>());
+    final List<ScheduledFuture<?>> futures = Collections.synchronizedList(new ArrayList<>());
+
+    RecordingScheduler() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      ScheduledFuture<?> future = super.schedule(command, 1, TimeUnit.DAYS);
+      tasks.add(command);
+      futures.add(future);
+      delays.add(unit.toMillis(delay));
+      return future;
+    }
+  }
+
+  static class NamedExecutor implements Executor {
+    final AtomicInteger executed = new AtomicInteger();
+    final Executor executor;
+
+    NamedExecutor(String name) {
+      executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, name));
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+      executed.incrementAndGet();
+      executor.execute(runnable);
+    }
+  }
+
+  static class ManualClock implements Clock {
+    private final AtomicLong now = new AtomicLong();
+
+    @Override
+    public long now() {
+      return now.get();
+    }
+
+    void advance(long millis) {
+      now.addAndGet(millis);
+    }
+  }
+
+  static class CircuitStates implements CircuitListener {
+    final List<String> uris = new ArrayList<>();
+    final List<CircuitState> states = new ArrayList<>();
+
+    @Override
+    public synchronized void onStateChanged(String uri, CircuitState state) {
+      uris.add(uri);
+      states.add(state);
+    }
+
+    synchronized List<CircuitState> of(String uri) {
+      List<CircuitState> changes = new ArrayList<>();
+      for (int i = 0; i < uris.size(); i++) if (uris.get(i).equals(uri)) changes.add(states.get(i));
+      return changes;
+    }
+  }
+
 }
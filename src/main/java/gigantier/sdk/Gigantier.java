@@ -1,6 +1,7 @@
 package gigantier.sdk;
 
 import android.content.Context;
+import android.os.Looper;
 import android.util.Log;
 
 import com.android.volley.Request;
@@ -8,29 +9,192 @@ import com.android.volley.Request;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 import gigantier.sdk.auth.Credential;
+import gigantier.sdk.auth.RefreshAheadScheduler;
+import gigantier.sdk.auth.Token;
+import gigantier.sdk.auth.TokenBody;
+import gigantier.sdk.auth.TokenRefresher;
+import gigantier.sdk.auth.TokenStorage;
+import gigantier.sdk.auth.TokenStore;
+import gigantier.sdk.batch.Batch;
+import gigantier.sdk.batch.CallResult;
+import gigantier.sdk.batch.CallSpec;
+import gigantier.sdk.circuit.CircuitBreakers;
+import gigantier.sdk.endpoints.ApiException;
+import gigantier.sdk.endpoints.CallFuture;
+import gigantier.sdk.endpoints.CallHandle;
+import gigantier.sdk.endpoints.CallOptions;
+import gigantier.sdk.endpoints.CompressionStats;
 import gigantier.sdk.endpoints.Config;
+import gigantier.sdk.endpoints.Decoder;
 import gigantier.sdk.endpoints.Gateway;
+import gigantier.sdk.endpoints.NetworkCore;
+import gigantier.sdk.endpoints.Priority;
+import gigantier.sdk.endpoints.ResponseCache;
+import gigantier.sdk.listeners.BatchListener;
 import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.OfflineListener;
 import gigantier.sdk.listeners.ResponseListener;
+import gigantier.sdk.metrics.CallMetrics;
+import gigantier.sdk.metrics.CallTrace;
+import gigantier.sdk.metrics.Metrics;
+import gigantier.sdk.offline.ConnectivityReceiver;
+import gigantier.sdk.offline.OfflineQueue;
+import gigantier.sdk.offline.QueuedCall;
+import gigantier.sdk.paging.PageCursor;
 import gigantier.sdk.utils.Constants;
 import gigantier.sdk.utils.Preferences;
 
 public class Gigantier {
 
   private static final String TAG = Gigantier.class.getName();
+  private static final Executor DIRECT = Runnable::run;
 
-  private Preferences preferences;
+  private TokenStore tokenStore;
   private Config config;
   private Gateway gateway;
+  private TokenRefresher tokenRefresher;
+  private RefreshAheadScheduler refreshAheadScheduler;
+  private Executor delivery;
+  private Executor diskExecutor;
+  private Context context;
+  private OfflineQueue offlineQueue;
+  private ConnectivityReceiver connectivityReceiver;
+  private final Map<String, String> headers;
+  private final Set<CallHandle> activeCalls = new HashSet<>();
 
   public Gigantier(Context context, Config config) {
-    this.preferences = new Preferences(context);
+    this(NetworkCore.getDefault(context), config);
+  }
+
+  /**
+   * Does no disk or network I/O, stored tokens are loaded on first use. See {@link #prewarm()}.
+   *
+   * @param core network resources to share with other clients
+   */
+  public Gigantier(NetworkCore core, Config config) {
     this.config = config;
-    this.gateway = new Gateway(context, config);
+    this.context = core.getContext();
+    this.headers = buildHeaders(config);
+    this.tokenStore = new TokenStore(config.tokenStorage != null ? config.tokenStorage
+        : new Preferences(core.getContext()));
+    this.gateway = new Gateway(core, config);
+    this.tokenRefresher = new TokenRefresher();
+    this.delivery = config.deliveryExecutor != null ? config.deliveryExecutor : core.getDeliveryExecutor();
+    this.diskExecutor = core.getDiskExecutor();
+
+    if (config.refreshAhead) {
+      this.refreshAheadScheduler = new RefreshAheadScheduler(config.refreshAheadFraction,
+          config.refreshAheadJitter, config.idleTimeout, config.refreshAheadExecutor);
+      diskExecutor.execute(() -> {
+        scheduleAppRefresh(tokenStore.getAppToken());
+        scheduleUserRefresh(tokenStore.getUserToken());
+      });
+    }
+
+    if (config.offlineQueue) {
+      this.offlineQueue = new OfflineQueue(context, core.getDiskExecutor(), config.offlineParallelism,
+          offlineListener());
+      // sticky broadcast, so queued calls left by a previous run are replayed once connected
+      this.connectivityReceiver = new ConnectivityReceiver(this::replayOfflineQueue);
+      context.registerReceiver(connectivityReceiver, ConnectivityReceiver.filter());
+    }
+  }
+
+  /**
+   * Get ready for the first call, in background: load the stored tokens, then renew the app token
+   * if missing or expired, or else open a connection to the api host. Optional, best called early,
+   * like in Application.onCreate.
+   */
+  public void prewarm() {
+    diskExecutor.execute(() -> {
+      tokenStore.load();
+
+      if (tokenStore.getAppToken().isValid()) {
+        gateway.preconnect();
+        return;
+      }
+
+      // the token request opens the connection as well
+      getAppToken(null, token -> Log.d(TAG, "App token ready"),
+          (code, msg) -> Log.e(TAG, "Cannot prewarm app token: " + code + " - " + msg));
+    });
+  }
+
+  /**
+   * Stop background work, like token refresh ahead. The client must not be used afterwards.
+   */
+  public void shutdown() {
+    if (refreshAheadScheduler != null) refreshAheadScheduler.shutdown();
+    if (connectivityReceiver != null) context.unregisterReceiver(connectivityReceiver);
+  }
+
+  /**
+   * Authenticated Api call kept on disk until the api answers it, replayed whenever the device
+   * gets connected. Meant for mutations, which are sent with an idempotency key. Requires
+   * config.offlineQueue, results are reported to config.offlineListener.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, must not be modified afterwards
+   * @throws IllegalArgumentException if the body cannot be serialized, like a NaN number
+   */
+  public void queueAuthenticatedCall(final String uri, final Map<String, Object> body) {
+    if (offlineQueue == null) throw new IllegalStateException("Offline queue disabled, see Config.offlineQueue");
+
+    offlineQueue.add(uri, body);
+    if (ConnectivityReceiver.isConnected(context)) replayOfflineQueue();
+  }
+
+  /**
+   * @return offline queue, or null if disabled
+   */
+  public OfflineQueue getOfflineQueue() {
+    return offlineQueue;
+  }
+
+  /**
+   * @return response cache, or null if disabled
+   */
+  public ResponseCache getResponseCache() {
+    return gateway.getResponseCache();
+  }
+
+  /**
+   * @return calls that joined an identical request in flight instead of being sent
+   */
+  public long getDeduplicatedCount() {
+    return gateway.getDeduplicatedCount();
+  }
+
+  /**
+   * @return aggregated call metrics, like latency histograms per endpoint
+   */
+  public Metrics getMetrics() {
+    return gateway.getMetrics();
+  }
+
+  /**
+   * @return circuit breakers of the endpoints, see config.circuitPolicy
+   */
+  public CircuitBreakers getCircuitBreakers() {
+    return gateway.getCircuitBreakers();
+  }
+
+  /**
+   * @return byte counters of gzip compressed request and response bodies
+   */
+  public CompressionStats getCompressionStats() {
+    return gateway.getCompressionStats();
   }
 
   /**
@@ -42,125 +206,658 @@ public class Gigantier {
   public void authenticate(final String identifier, final String password,
                            final ResponseListener<Credential> responseListener,
                            final ErrorListener errorListener) {
+    authenticate(identifier, password, internalHandle(),
+        credential -> delivery.execute(() -> responseListener.onResponse(credential)),
+        (code, msg) -> delivery.execute(() -> errorListener.onError(code, msg)));
+  }
 
-    HashMap<String, Object> body = new HashMap<>();
-    body.put("username", identifier);
-    body.put("password", password);
-    retrieveToken(Constants.GRANT_TYPE_USER, body, (credential) -> {
-      onCredential(credential);
-      responseListener.onResponse(credential);
-    }, errorListener);
+  /**
+   * Obtain user token, completing the future on the network thread.
+   *
+   * @param identifier user identifier
+   * @param password user password
+   */
+  public CallFuture<Credential> authenticateAsync(final String identifier, final String password) {
+    CallFuture<Credential> future = new CallFuture<>();
+    CallHandle handle = internalHandle();
+    future.setHandle(handle);
+    authenticate(identifier, password, handle, future.responseListener(), future.errorListener());
+    return future;
+  }
+
+  /**
+   * Blocking user token request, for background threads.
+   *
+   * @param identifier user identifier
+   * @param password user password
+   * @throws IllegalStateException if called on the main thread
+   */
+  public Credential executeAuthenticate(final String identifier, final String password) throws ApiException {
+    checkNotMainThread();
+    return await(authenticateAsync(identifier, password));
+  }
+
+  /**
+   * Forget the user token and the cached responses. Calls made afterwards with the user token
+   * fail until the user authenticates again.
+   */
+  public void logout() {
+    if (refreshAheadScheduler != null) refreshAheadScheduler.cancel(TokenStorage.USER);
+    withTokens(tokenStore::clearUserToken);
+    gateway.clearCaches();
   }
 
   /**
    * Api call
    *
    * @param uri api endpoint uri
+   * @return handle to cancel the call
    */
-  public void call(final String uri, final ResponseListener<JSONObject> responseListener,
-                   final ErrorListener errorListener) {
-    call(uri, null, responseListener, errorListener);
+  public CallHandle call(final String uri, final ResponseListener<JSONObject> responseListener,
+                         final ErrorListener errorListener) {
+    return call(uri, null, responseListener, errorListener);
   }
 
   /**
    * Api call with body.
    *
    * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @return handle to cancel the call
    */
-  public void call(final String uri, final Map<String, Object> body, final ResponseListener<JSONObject> responseListener,
-                   final ErrorListener errorListener) {
+  public CallHandle call(final String uri, final Map<String, Object> body,
+                         final ResponseListener<JSONObject> responseListener,
+                         final ErrorListener errorListener) {
+    return call(uri, body, new CallOptions(), responseListener, errorListener);
+  }
 
-    getAppToken(false, (token) -> {
-      Map<String, Object> requestBody = new HashMap<>();
-      if (body != null) requestBody.putAll(body);
-      requestBody.put("access_token", token);
-      execPost(uri, requestBody, false, config.retries, responseListener, errorListener);
-    }, errorListener);
+  /**
+   * Api call with body and options.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param options call options, like its tag or deadline
+   * @return handle to cancel the call
+   */
+  public CallHandle call(final String uri, final Map<String, Object> body, final CallOptions options,
+                         final ResponseListener<JSONObject> responseListener,
+                         final ErrorListener errorListener) {
+    return exec(uri, body, false, options, jsonExchange(), responseListener, errorListener);
   }
 
   /**
    * Authenticated Api call
    *
    * @param uri api endpoint uri
+   * @return handle to cancel the call
    */
-  public void authenticatedCall(final String uri, final ResponseListener<JSONObject> responseListener,
-                                final ErrorListener errorListener) {
-    authenticatedCall(uri, null, responseListener, errorListener);
+  public CallHandle authenticatedCall(final String uri, final ResponseListener<JSONObject> responseListener,
+                                      final ErrorListener errorListener) {
+    return authenticatedCall(uri, null, responseListener, errorListener);
   }
 
   /**
    * Authenticated Api call with body.
    *
    * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @return handle to cancel the call
+   */
+  public CallHandle authenticatedCall(final String uri, final Map<String, Object> body,
+                                      final ResponseListener<JSONObject> responseListener,
+                                      final ErrorListener errorListener) {
+    return authenticatedCall(uri, body, new CallOptions(), responseListener, errorListener);
+  }
+
+  /**
+   * Authenticated Api call with body and options.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param options call options, like its tag or deadline
+   * @return handle to cancel the call
+   */
+  public CallHandle authenticatedCall(final String uri, final Map<String, Object> body, final CallOptions options,
+                                      final ResponseListener<JSONObject> responseListener,
+                                      final ErrorListener errorListener) {
+    return exec(uri, body, true, options, jsonExchange(), responseListener, errorListener);
+  }
+
+  /**
+   * Api call with body, decoding the response into a typed object. The response is decoded
+   * straight from the response stream, on the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param decoder response decoder
+   * @return handle to cancel the call
+   */
+  public <T> CallHandle call(final String uri, final Map<String, Object> body, final Decoder<T> decoder,
+                             final ResponseListener<T> responseListener, final ErrorListener errorListener) {
+    return call(uri, body, new CallOptions(), decoder, responseListener, errorListener);
+  }
+
+  /**
+   * Api call with body and options, decoding the response into a typed object.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param options call options, like its tag or deadline
+   * @param decoder response decoder
+   * @return handle to cancel the call
+   */
+  public <T> CallHandle call(final String uri, final Map<String, Object> body, final CallOptions options,
+                             final Decoder<T> decoder, final ResponseListener<T> responseListener,
+                             final ErrorListener errorListener) {
+    return exec(uri, body, false, options, decodingExchange(decoder), responseListener, errorListener);
+  }
+
+  /**
+   * Authenticated Api call with body, decoding the response into a typed object. The response is
+   * decoded straight from the response stream, on the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param decoder response decoder
+   * @return handle to cancel the call
+   */
+  public <T> CallHandle authenticatedCall(final String uri, final Map<String, Object> body, final Decoder<T> decoder,
+                                          final ResponseListener<T> responseListener,
+                                          final ErrorListener errorListener) {
+    return authenticatedCall(uri, body, new CallOptions(), decoder, responseListener, errorListener);
+  }
+
+  /**
+   * Authenticated Api call with body and options, decoding the response into a typed object.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param options call options, like its tag or deadline
+   * @param decoder response decoder
+   * @return handle to cancel the call
+   */
+  public <T> CallHandle authenticatedCall(final String uri, final Map<String, Object> body, final CallOptions options,
+                                          final Decoder<T> decoder, final ResponseListener<T> responseListener,
+                                          final ErrorListener errorListener) {
+    return exec(uri, body, true, options, decodingExchange(decoder), responseListener, errorListener);
+  }
+
+  /**
+   * Api call with body, completing the future on the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   */
+  public CallFuture<JSONObject> callAsync(final String uri, final Map<String, Object> body) {
+    return future(uri, body, false, jsonExchange());
+  }
+
+  /**
+   * Api call with body, decoding the response into a typed object and completing the future on
+   * the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param decoder response decoder
+   */
+  public <T> CallFuture<T> callAsync(final String uri, final Map<String, Object> body, final Decoder<T> decoder) {
+    return future(uri, body, false, decodingExchange(decoder));
+  }
+
+  /**
+   * Authenticated Api call with body, completing the future on the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   */
+  public CallFuture<JSONObject> authenticatedCallAsync(final String uri, final Map<String, Object> body) {
+    return future(uri, body, true, jsonExchange());
+  }
+
+  /**
+   * Authenticated Api call with body, decoding the response into a typed object and completing
+   * the future on the network thread.
+   *
+   * @param uri api endpoint uri
+   * @param body call body, or null. Not copied, it must not be modified afterwards
+   * @param decoder response decoder
+   */
+  public <T> CallFuture<T> authenticatedCallAsync(final String uri, final Map<String, Object> body,
+                                                  final Decoder<T> decoder) {
+    return future(uri, body, true, decodingExchange(decoder));
+  }
+
+  /**
+   * Blocking Api call with body, for background threads.
+   *
+   * @param uri api endpoint uri
+   * @throws IllegalStateException if called on the main thread
+   */
+  public JSONObject execute(final String uri, final Map<String, Object> body) throws ApiException {
+    checkNotMainThread();
+    return await(callAsync(uri, body));
+  }
+
+  /**
+   * Blocking Api call with body, decoding the response into a typed object.
+   *
+   * @param uri api endpoint uri
+   * @param decoder response decoder
+   * @throws IllegalStateException if called on the main thread
+   */
+  public <T> T execute(final String uri, final Map<String, Object> body, final Decoder<T> decoder)
+      throws ApiException {
+    checkNotMainThread();
+    return await(callAsync(uri, body, decoder));
+  }
+
+  /**
+   * Blocking authenticated Api call with body, for background threads.
+   *
+   * @param uri api endpoint uri
+   * @throws IllegalStateException if called on the main thread
+   */
+  public JSONObject executeAuthenticated(final String uri, final Map<String, Object> body) throws ApiException {
+    checkNotMainThread();
+    return await(authenticatedCallAsync(uri, body));
+  }
+
+  /**
+   * Blocking authenticated Api call with body, decoding the response into a typed object.
+   *
+   * @param uri api endpoint uri
+   * @param decoder response decoder
+   * @throws IllegalStateException if called on the main thread
+   */
+  public <T> T executeAuthenticated(final String uri, final Map<String, Object> body, final Decoder<T> decoder)
+      throws ApiException {
+    checkNotMainThread();
+    return await(authenticatedCallAsync(uri, body, decoder));
+  }
+
+  /**
+   * Cancel every call in progress with the given tag.
+   *
+   * @param tag call tag, see {@link CallOptions#tag}
+   */
+  public void cancelAll(final Object tag) {
+    List<CallHandle> canceled = new ArrayList<>();
+    synchronized (activeCalls) {
+      for (CallHandle handle : activeCalls) if (tag.equals(handle.getTag())) canceled.add(handle);
+    }
+
+    for (CallHandle handle : canceled) handle.cancel();
+  }
+
+  /**
+   * Cursor over a paginated list endpoint, fetching pages with offset and limit body params.
+   *
+   * @param uri api endpoint uri
+   * @param body extra body params, or null
+   * @param itemsKey key of the items array in the response
+   * @param pageSize items per page
+   */
+  public PageCursor pages(final String uri, final Map<String, Object> body, final String itemsKey, final int pageSize) {
+    return new PageCursor((offset, limit, responseListener, errorListener) -> {
+      Map<String, Object> pageBody = new HashMap<>();
+      if (body != null) pageBody.putAll(body);
+      pageBody.put(config.pageOffsetParam, offset);
+      pageBody.put(config.pageLimitParam, limit);
+      call(uri, pageBody, responseListener, errorListener);
+    }, itemsKey, pageSize, config.pagePrefetch);
+  }
+
+  /**
+   * Batch of api calls, executed concurrently with at most config.batchParallelism in flight.
+   *
+   * @param specs calls to execute
+   * @return handle of the batch, canceling it cancels its calls
+   */
+  public CallHandle callAll(final List<CallSpec> specs, final BatchListener batchListener) {
+    return callAll(specs, config.batchParallelism, new CallOptions(), batchListener);
+  }
+
+  /**
+   * Batch of api calls, executed concurrently with at most parallelism in flight.
+   *
+   * @param specs calls to execute
+   * @param parallelism max calls in flight
+   * @return handle of the batch, canceling it cancels its calls
    */
-  public void authenticatedCall(final String uri, final Map<String, Object> body,
-                                final ResponseListener<JSONObject> responseListener,
-                                final ErrorListener errorListener) {
+  public CallHandle callAll(final List<CallSpec> specs, final int parallelism, final BatchListener batchListener) {
+    return callAll(specs, parallelism, new CallOptions(), batchListener);
+  }
+
+  /**
+   * Batch of api calls, executed concurrently. Tokens are resolved once for the whole batch, the
+   * batch listener is called once every call has finished, with a result per call.
+   *
+   * @param specs calls to execute
+   * @param parallelism max calls in flight
+   * @param options tag and priority of the batch, the deadline applies to each call and the
+   * executor delivers the results
+   * @return handle of the batch, canceling it cancels its calls
+   */
+  public CallHandle callAll(final List<CallSpec> specs, final int parallelism, final CallOptions options,
+                            final BatchListener batchListener) {
+    onActivity();
+
+    final Executor batchDelivery = options.executor != null ? options.executor : delivery;
+    final CallHandle batchHandle = track(new CallHandle(options.tag, options.priority, null, DIRECT));
+    final ResponseListener<List<CallResult>> onComplete = batchHandle.wrap(results ->
+        batchDelivery.execute(() -> batchListener.onComplete(results)));
+
+    final Batch batch = new Batch(specs, parallelism, onComplete::onResponse,
+        (spec, token, responseListener, errorListener) -> {
+          if (batchHandle.isFinished()) return;
+
+          // every call is a call of its own: traced, reported and bound by the deadline
+          final CallTrace trace = new CallTrace(spec.uri);
+          final CallHandle handle = new CallHandle(null, options.priority, trace, DIRECT);
+          final ErrorListener onError = (code, msg) -> {
+            report(trace.finish(code));
+            errorListener.onError(code, msg);
+          };
+          batchHandle.onCancel(handle::cancel);
+          handle.startDeadline(deadlineOf(options), onError, Constants.ERROR_DEADLINE_EXCEEDED, "deadline-exceeded");
+
+          execPost(spec.uri, new TokenBody(spec.body, token), spec.authenticated, config.retries, handle,
+              jsonExchange(), handle.wrap(response -> {
+                report(trace.finish());
+                responseListener.onResponse(response);
+              }), handle.wrap(onError));
+        });
+
+    resolveBatchToken(batch, false, () -> resolveBatchToken(batch, true, batch::start));
+    return batchHandle;
+  }
 
-    getUserToken(false, (token) -> {
-      Map<String, Object> requestBody = new HashMap<>();
-      if (body != null) requestBody.putAll(body);
-      requestBody.put("access_token", token);
-      execPost(uri, requestBody, true, config.retries, responseListener, errorListener);
+  private void resolveBatchToken(final Batch batch, final boolean authenticated, final Runnable next) {
+    if (!batch.needsToken(authenticated)) {
+      next.run();
+      return;
+    }
+
+    ResponseListener<String> onToken = token -> {
+      batch.setToken(authenticated, token);
+      next.run();
+    };
+    ErrorListener onError = (code, msg) -> {
+      batch.setTokenError(authenticated, code, msg);
+      next.run();
+    };
+
+    withTokens(() -> {
+      if (authenticated) getUserToken(null, onToken, onError);
+      else getAppToken(null, onToken, onError);
+    });
+  }
+
+  private void authenticate(final String identifier, final String password, final CallHandle handle,
+                            final ResponseListener<Credential> responseListener, final ErrorListener errorListener) {
+
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("username", identifier);
+    body.put("password", password);
+    retrieveToken(Constants.GRANT_TYPE_USER, body, handle, (credential) -> {
+      // responses cached before may belong to another user
+      gateway.clearCaches();
+      onCredential(credential);
+      responseListener.onResponse(credential);
     }, errorListener);
   }
 
-  private void execPost(final String uri, final Map<String, Object> body, final boolean isUserApi, final int retries,
-                        final ResponseListener<JSONObject> responseListener,
-                        final ErrorListener errorListener) {
+  private <T> CallFuture<T> future(final String uri, final Map<String, Object> body, final boolean isUserApi,
+                                   final Exchange<T> exchange) {
+    CallOptions options = new CallOptions();
+    options.executor = DIRECT;
+
+    CallFuture<T> future = new CallFuture<>();
+    future.setHandle(exec(uri, body, isUserApi, options, exchange, future.responseListener(), future.errorListener()));
+    return future;
+  }
+
+  private static <T> T await(final CallFuture<T> future) throws ApiException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw (ApiException) e.getCause();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ApiException(-1, "interrupted");
+    }
+  }
+
+  /**
+   * Replay the offline queue with the user token, each call with the idempotency key it was
+   * queued with.
+   */
+  private void replayOfflineQueue() {
+    offlineQueue.replay(new OfflineQueue.Sender() {
+      @Override
+      public void resolveToken(ResponseListener<String> responseListener, ErrorListener errorListener) {
+        getUserToken(null, responseListener, errorListener);
+      }
+
+      @Override
+      public void send(QueuedCall call, String token, ResponseListener<JSONObject> responseListener,
+                       ErrorListener errorListener) {
+        Map<String, String> keyedHeaders = new HashMap<>(headers);
+        keyedHeaders.put(Constants.IDEMPOTENCY_KEY_HEADER, call.idempotencyKey);
+
+        execPost(call.uri, new TokenBody(call.body, token), true, config.retries, internalHandle(),
+            (uri, body, isUserApi, handle, onResponse, onError) -> gateway.execMethod(Request.Method.POST, uri,
+                keyedHeaders, body, handle, isUserApi, onResponse, onError), responseListener, errorListener);
+      }
+    });
+  }
+
+  private OfflineListener offlineListener() {
+    final OfflineListener listener = config.offlineListener;
+    if (listener == null) return null;
+
+    return new OfflineListener() {
+      @Override
+      public void onReplayed(QueuedCall call, JSONObject response) {
+        delivery.execute(() -> listener.onReplayed(call, response));
+      }
+
+      @Override
+      public void onFailed(QueuedCall call, int code, String msg) {
+        delivery.execute(() -> listener.onFailed(call, code, msg));
+      }
+    };
+  }
+
+  /**
+   * Keep the handle in the active calls, for cancelAll, until the call finishes.
+   */
+  private CallHandle track(final CallHandle handle) {
+    synchronized (activeCalls) {
+      activeCalls.add(handle);
+    }
+    handle.onFinish(() -> {
+      synchronized (activeCalls) {
+        activeCalls.remove(handle);
+      }
+    });
+    return handle;
+  }
+
+  private long deadlineOf(final CallOptions options) {
+    return options.deadline >= 0 ? options.deadline : config.callDeadline;
+  }
+
+  /**
+   * @return handle of a request whose results are consumed by the sdk, delivered on the network thread
+   */
+  private static CallHandle internalHandle() {
+    return new CallHandle(null, Priority.NORMAL, null, DIRECT);
+  }
+
+  private static void checkNotMainThread() {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      throw new IllegalStateException("Blocking calls must not be made on the main thread");
+    }
+  }
+
+  private <T> CallHandle exec(final String uri, final Map<String, Object> body, final boolean isUserApi,
+                               final CallOptions options, final Exchange<T> exchange,
+                               final ResponseListener<T> responseListener, final ErrorListener errorListener) {
+
+    onActivity();
+
+    final CallTrace trace = new CallTrace(uri);
+    // token resolution, 401 renewal and retries run on network threads, only the result is delivered
+    final Executor callDelivery = options.executor != null ? options.executor : delivery;
+    final CallHandle handle = track(new CallHandle(options.tag, options.priority, trace, DIRECT));
+    // cached responses revalidated in background come later as updates, not reported again
+    final ResponseListener<T> delivered = handle.wrap(response -> {
+      report(trace.finish());
+      responseListener.onResponse(response);
+    }, responseListener);
+    final ErrorListener deliveredError = handle.wrap((code, msg) -> {
+      report(trace.finish(code));
+      errorListener.onError(code, msg);
+    });
+    final ResponseListener<T> onResponse = response -> callDelivery.execute(() -> delivered.onResponse(response));
+    final ErrorListener onError = (code, msg) -> callDelivery.execute(() -> deliveredError.onError(code, msg));
+
+    handle.startDeadline(deadlineOf(options), (code, msg) -> callDelivery.execute(() -> {
+      report(trace.finish(code));
+      errorListener.onError(code, msg);
+    }), Constants.ERROR_DEADLINE_EXCEEDED, "deadline-exceeded");
+
+    // fail fast, without resolving a token first
+    if (gateway.isCircuitOpen(uri)) {
+      onError.onError(Constants.ERROR_CIRCUIT_OPEN, "circuit-open");
+      return handle;
+    }
+
+    ResponseListener<String> onToken = (token) -> {
+      if (handle.isFinished()) return;
+      execPost(uri, new TokenBody(body, token), isUserApi, config.retries, handle, exchange, onResponse, onError);
+    };
+
+    withTokens(() -> {
+      if (isUserApi) getUserToken(null, trace, onToken, onError);
+      else getAppToken(null, trace, onToken, onError);
+    });
+
+    return handle;
+  }
+
+  private <T> void execPost(final String uri, final TokenBody body, final boolean isUserApi, final int retries,
+                            final CallHandle handle, final Exchange<T> exchange,
+                            final ResponseListener<T> responseListener, final ErrorListener errorListener) {
 
     Log.d(TAG, "Exec post to: " + uri + " -- retries: " + retries);
 
-    gateway.execMethod(Request.Method.POST, uri, buildHeaders(), body, responseListener, (code, msg) -> {
+    exchange.exec(uri, body, isUserApi, handle, responseListener, (code, msg) -> {
+      if (code == 401) {
+        gateway.getMetrics().onUnauthorized();
+        if (handle != null && handle.getTrace() != null) handle.getTrace().onTokenRefresh();
+      }
+
+      String rejectedToken = body.getAccessToken();
       ResponseListener<String> onTokenRenewed = token -> {
         Log.d(TAG, "Token renewed, executing again post to " + uri);
 
-        Map<String, Object> newBody = new HashMap<>(body);
-        newBody.put("access_token", token);
-        execPost(uri, newBody, isUserApi, retries - 1, responseListener, errorListener);
+        if (handle != null && handle.isFinished()) return;
+        execPost(uri, body.withToken(token), isUserApi, retries - 1, handle, exchange, responseListener, errorListener);
       };
 
-      if (code == 401 && retries > 0 && isUserApi) getUserToken(true, onTokenRenewed, errorListener);
-      else if (code == 401 && retries > 0) getAppToken(true, onTokenRenewed, errorListener);
+      if (code == 401 && retries > 0 && isUserApi) getUserToken(rejectedToken, onTokenRenewed, errorListener);
+      else if (code == 401 && retries > 0) getAppToken(rejectedToken, onTokenRenewed, errorListener);
       else errorListener.onError(code, msg);
     });
   }
 
-  private void getAppToken(final boolean renew, final ResponseListener<String> responseListener,
+  /**
+   * Resolve the app token, renewing it when missing, expired or equal to the rejected one.
+   * Concurrent renewals are coalesced into a single token request.
+   *
+   * @param rejectedToken token refused by the api (401), or null
+   */
+  private void getAppToken(final String rejectedToken, final ResponseListener<String> responseListener,
                            final ErrorListener errorListener) {
+    getAppToken(rejectedToken, null, responseListener, errorListener);
+  }
 
-    String storedAppToken = preferences.getAppToken();
-    if (!renew && storedAppToken != null && !"".equals(storedAppToken) && !preferences.isAppTokenExpired()) {
-      responseListener.onResponse(storedAppToken);
+  /**
+   * @param trace measures of the call waiting for the token, or null
+   */
+  private void getAppToken(final String rejectedToken, final CallTrace trace,
+                           final ResponseListener<String> responseListener, final ErrorListener errorListener) {
+
+    Token storedAppToken = tokenStore.getAppToken();
+    if (isUsable(storedAppToken, rejectedToken)) {
+      responseListener.onResponse(storedAppToken.accessToken);
     } else {
-      retrieveToken(Constants.GRANT_TYPE_APP, new HashMap<>(), (credential) -> {
-        preferences.resetAppToken();
-        preferences.setAppToken(credential.accessToken);
-        preferences.setAppRefreshToken(credential.refreshToken);
-        preferences.setAppTokenExpiration(credential.expires);
-        responseListener.onResponse(credential.accessToken);
-      }, errorListener);
+      if (trace != null) trace.onTokenRefresh();
+      tokenRefresher.refresh(Constants.GRANT_TYPE_APP, (onCredential, onError) -> {
+        gateway.getMetrics().onTokenRefresh();
+        retrieveToken(Constants.GRANT_TYPE_APP, new HashMap<>(), null, (credential) -> {
+          scheduleAppRefresh(tokenStore.setAppCredential(credential));
+          onCredential.onResponse(credential);
+        }, onError);
+      }, (credential) -> responseListener.onResponse(credential.accessToken), errorListener);
     }
   }
 
-  private void getUserToken(final boolean renew, final ResponseListener<String> responseListener,
+  /**
+   * Resolve the user token, renewing it when missing, expired or equal to the rejected one.
+   * Concurrent renewals are coalesced into a single token request.
+   *
+   * @param rejectedToken token refused by the api (401), or null
+   */
+  private void getUserToken(final String rejectedToken, final ResponseListener<String> responseListener,
                             final ErrorListener errorListener) {
+    getUserToken(rejectedToken, null, responseListener, errorListener);
+  }
+
+  /**
+   * @param trace measures of the call waiting for the token, or null
+   */
+  private void getUserToken(final String rejectedToken, final CallTrace trace,
+                            final ResponseListener<String> responseListener, final ErrorListener errorListener) {
 
-    String storedUserToken = preferences.getUserToken();
+    Token storedUserToken = tokenStore.getUserToken();
 
-    if (!renew && storedUserToken != null && !"".equals(storedUserToken) && !preferences.isUserTokenExpired()) {
-      responseListener.onResponse(storedUserToken);
+    if (isUsable(storedUserToken, rejectedToken)) {
+      responseListener.onResponse(storedUserToken.accessToken);
     } else {
-      Map<String, Object> body = new HashMap<>();
-      body.put("refresh_token", preferences.getUserRefreshToken());
-      retrieveToken(Constants.GRANT_TYPE_REFRESH, body, (credential) -> {
-        onCredential(credential);
-        responseListener.onResponse(credential.accessToken);
-      }, errorListener);
+      if (trace != null) trace.onTokenRefresh();
+      tokenRefresher.refresh(Constants.GRANT_TYPE_REFRESH, (onCredential, onError) -> {
+        gateway.getMetrics().onTokenRefresh();
+        Map<String, Object> body = new HashMap<>();
+        body.put("refresh_token", tokenStore.getUserToken().refreshToken);
+        retrieveToken(Constants.GRANT_TYPE_REFRESH, body, null, (credential) -> {
+          onCredential(credential);
+          onCredential.onResponse(credential);
+        }, onError);
+      }, (credential) -> responseListener.onResponse(credential.accessToken), errorListener);
     }
   }
 
-  private void retrieveToken(final String grantType, final Map<String, Object> body,
+  /**
+   * Run a token lookup, on the disk executor until the stored tokens are loaded, so the first
+   * read of the storage never happens on the caller thread.
+   */
+  private void withTokens(final Runnable lookup) {
+    if (tokenStore.isLoaded()) lookup.run();
+    else diskExecutor.execute(lookup);
+  }
+
+  private boolean isUsable(final Token storedToken, final String rejectedToken) {
+    return storedToken.isValid() && !storedToken.accessToken.equals(rejectedToken);
+  }
+
+  /**
+   * @param handle handle of the token request, or null
+   */
+  private void retrieveToken(final String grantType, final Map<String, Object> body, final CallHandle handle,
                              final ResponseListener<Credential> responseListener,
                              final ErrorListener errorListener) {
 
@@ -172,7 +869,8 @@ public class Gigantier {
     requestBody.put("client_secret", config.clientSecret);
     requestBody.put("scope", config.scope);
 
-    gateway.execMethod(Request.Method.POST, config.authUri, buildHeaders(), requestBody, (response) -> {
+    CallHandle tokenHandle = handle != null ? handle : internalHandle();
+    gateway.execMethod(Request.Method.POST, config.authUri, headers, requestBody, tokenHandle, (response) -> {
       Credential credential = new Credential();
 
       try {
@@ -192,20 +890,59 @@ public class Gigantier {
     }, errorListener);
   }
 
+  private void report(final CallMetrics metrics) {
+    gateway.getMetrics().record(metrics);
+    if (config.metricsListener != null) config.metricsListener.onCall(metrics);
+  }
+
   private void onCredential(final Credential credential) {
-    preferences.resetUserToken();
-    preferences.setUserToken(credential.accessToken);
-    preferences.setUserRefreshToken(credential.refreshToken);
-    preferences.setUserTokenExpiration(credential.expires);
+    scheduleUserRefresh(tokenStore.setUserCredential(credential));
+  }
+
+  private void onActivity() {
+    if (refreshAheadScheduler != null) refreshAheadScheduler.touch();
+  }
+
+  private void scheduleAppRefresh(final Token token) {
+    if (refreshAheadScheduler == null || !token.isValid()) return;
+
+    refreshAheadScheduler.schedule(TokenStorage.APP, token, () ->
+        getAppToken(tokenStore.getAppToken().accessToken, (renewed) -> { },
+            (code, msg) -> Log.e(TAG, "Cannot refresh ahead app token: " + code + " - " + msg)));
+  }
+
+  private void scheduleUserRefresh(final Token token) {
+    if (refreshAheadScheduler == null || !token.isValid() || "".equals(token.refreshToken)) return;
+
+    refreshAheadScheduler.schedule(TokenStorage.USER, token, () ->
+        getUserToken(tokenStore.getUserToken().accessToken, (renewed) -> { },
+            (code, msg) -> Log.e(TAG, "Cannot refresh ahead user token: " + code + " - " + msg)));
   }
 
-  private Map<String, String> buildHeaders() {
+  private Exchange<JSONObject> jsonExchange() {
+    return (uri, body, isUserApi, handle, responseListener, errorListener) ->
+        gateway.execMethod(Request.Method.POST, uri, headers, body, handle, isUserApi, responseListener, errorListener);
+  }
+
+  private <T> Exchange<T> decodingExchange(final Decoder<T> decoder) {
+    return (uri, body, isUserApi, handle, responseListener, errorListener) ->
+        gateway.execMethod(Request.Method.POST, uri, headers, body, handle, decoder, responseListener, errorListener);
+  }
+
+  private static Map<String, String> buildHeaders(final Config config) {
     Map<String, String> headers = new HashMap<>();
     headers.put(Constants.SDK_LANG_HEADER, Constants.SDK_LANG);
     headers.put(Constants.SDK_VERSION_HEADER, BuildConfig.VERSION_NAME);
     if (config.application != null) headers.put(Constants.SDK_APP_HEADER, config.application);
 
-    return headers;
+    return Collections.unmodifiableMap(headers);
+  }
+
+  private interface Exchange<T> {
+
+    void exec(String uri, Map<String, Object> body, boolean isUserApi, CallHandle handle,
+              ResponseListener<T> responseListener, ErrorListener errorListener);
+
   }
 
 }
@@ -0,0 +1,119 @@
+package gigantier.sdk.auth;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews tokens in background before they expire, so api calls never wait for a token request.
+ * Renewals due while the client is idle are skipped and run as soon as it is used again.
+ */
+public class RefreshAheadScheduler {
+
+  private static final String TAG = RefreshAheadScheduler.class.getName();
+
+  private final float fraction;
+  private final float jitter;
+  private final long idleTimeout;
+  private final Random random = new Random();
+  private final ScheduledExecutorService executor;
+  private final boolean ownExecutor;
+
+  private final Map<String, ScheduledFuture<?>> scheduled = new HashMap<>();
+  private final Map<String, Runnable> skipped = new HashMap<>();
+  private volatile long lastActivity = System.currentTimeMillis();
+
+  /**
+   * @param fraction fraction of the token lifetime after which it is renewed
+   * @param jitter random deviation applied to the fraction, to spread renewals
+   * @param idleTimeout millis without calls after which the client is considered idle
+   */
+  public RefreshAheadScheduler(float fraction, float jitter, long idleTimeout) {
+    this(fraction, jitter, idleTimeout, null);
+  }
+
+  /**
+   * @param executor runs the renewals, shared with the app, or null for a dedicated thread
+   */
+  public RefreshAheadScheduler(float fraction, float jitter, long idleTimeout, ScheduledExecutorService executor) {
+    this.fraction = fraction;
+    this.jitter = jitter;
+    this.idleTimeout = idleTimeout;
+    this.ownExecutor = executor == null;
+    this.executor = executor != null ? executor : Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gigantier-refresh-ahead");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Schedule the renewal of a token, replacing the one scheduled for the same type.
+   *
+   * @param type token type, {@link TokenStorage#APP} or {@link TokenStorage#USER}
+   * @param token token to renew
+   * @param refresh performs the renewal
+   */
+  public synchronized void schedule(final String type, final Token token, final Runnable refresh) {
+    cancel(type);
+
+    long lifetime = token.expiresAt - System.currentTimeMillis();
+    if (lifetime <= 0) return;
+
+    float factor = fraction + (jitter * (2 * random.nextFloat() - 1));
+    long delay = (long) (lifetime * Math.max(0f, Math.min(1f, factor)));
+
+    Log.d(TAG, "Refresh ahead of " + type + " token in " + delay + "ms");
+
+    scheduled.put(type, executor.schedule(() -> run(type, refresh), delay, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Record client activity, running the renewals skipped while idle.
+   */
+  public void touch() {
+    lastActivity = System.currentTimeMillis();
+
+    synchronized (this) {
+      if (skipped.isEmpty()) return;
+      for (Runnable refresh : skipped.values()) executor.execute(refresh);
+      skipped.clear();
+    }
+  }
+
+  public synchronized void cancel(final String type) {
+    ScheduledFuture<?> future = scheduled.remove(type);
+    if (future != null) future.cancel(false);
+    skipped.remove(type);
+  }
+
+  /**
+   * Cancel every renewal, stopping the executor unless it was given.
+   */
+  public synchronized void shutdown() {
+    for (ScheduledFuture<?> future : scheduled.values()) future.cancel(false);
+    scheduled.clear();
+    skipped.clear();
+    if (ownExecutor) executor.shutdownNow();
+  }
+
+  private void run(final String type, final Runnable refresh) {
+    synchronized (this) {
+      scheduled.remove(type);
+      if (System.currentTimeMillis() - lastActivity > idleTimeout) {
+        Log.d(TAG, "Client idle, skipping refresh ahead of " + type + " token");
+        skipped.put(type, refresh);
+        return;
+      }
+    }
+
+    refresh.run();
+  }
+
+}
@@ -0,0 +1,39 @@
+package gigantier.sdk.auth;
+
+/**
+ * Immutable snapshot of a stored token, with its absolute expiration time.
+ */
+public final class Token {
+
+  public static final Token EMPTY = new Token("", "", 0L);
+
+  public final String accessToken;
+  public final String refreshToken;
+  public final long expiresAt;
+
+  public Token(String accessToken, String refreshToken, long expiresAt) {
+    this.accessToken = accessToken != null ? accessToken : "";
+    this.refreshToken = refreshToken != null ? refreshToken : "";
+    this.expiresAt = expiresAt;
+  }
+
+  /**
+   * Build a token from a credential, whose expiration is relative to now.
+   */
+  public static Token from(Credential credential) {
+    return new Token(credential.accessToken, credential.refreshToken,
+        System.currentTimeMillis() + (credential.expires * 1000));
+  }
+
+  public boolean isExpired() {
+    return System.currentTimeMillis() > expiresAt;
+  }
+
+  /**
+   * @return true if the access token is present and not expired
+   */
+  public boolean isValid() {
+    return !"".equals(accessToken) && !isExpired();
+  }
+
+}
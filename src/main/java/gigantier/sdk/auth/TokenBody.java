@@ -0,0 +1,109 @@
+package gigantier.sdk.auth;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of a request body with its access token, without copying the caller's map.
+ * An access token already in the body is hidden by the given one.
+ */
+public class TokenBody extends AbstractMap<String, Object> {
+
+  public static final String ACCESS_TOKEN = "access_token";
+
+  private final Map<String, Object> body;
+  private final String accessToken;
+
+  /**
+   * @param body caller body, or null
+   */
+  public TokenBody(Map<String, Object> body, String accessToken) {
+    this.body = body;
+    this.accessToken = accessToken;
+  }
+
+  public String getAccessToken() {
+    return accessToken;
+  }
+
+  /**
+   * @return the same body with another access token
+   */
+  public TokenBody withToken(final String accessToken) {
+    return new TokenBody(body, accessToken);
+  }
+
+  @Override
+  public Object get(final Object key) {
+    if (ACCESS_TOKEN.equals(key)) return accessToken;
+    return body != null ? body.get(key) : null;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return ACCESS_TOKEN.equals(key) || (body != null && body.containsKey(key));
+  }
+
+  @Override
+  public int size() {
+    if (body == null) return 1;
+    return body.containsKey(ACCESS_TOKEN) ? body.size() : body.size() + 1;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return TokenBody.this.size();
+      }
+    };
+  }
+
+  private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+    private final Iterator<Entry<String, Object>> entries = body != null ? body.entrySet().iterator() : null;
+    private Entry<String, Object> next;
+    private boolean tokenReturned;
+
+    @Override
+    public boolean hasNext() {
+      if (next != null) return true;
+
+      while (entries != null && entries.hasNext()) {
+        Entry<String, Object> entry = entries.next();
+        if (!ACCESS_TOKEN.equals(entry.getKey())) {
+          next = entry;
+          return true;
+        }
+      }
+
+      return !tokenReturned;
+    }
+
+    @Override
+    public Entry<String, Object> next() {
+      if (!hasNext()) throw new NoSuchElementException();
+
+      if (next != null) {
+        Entry<String, Object> entry = next;
+        next = null;
+        return entry;
+      }
+
+      tokenReturned = true;
+      return new SimpleImmutableEntry<>(ACCESS_TOKEN, accessToken);
+    }
+
+  }
+
+}
@@ -0,0 +1,83 @@
+package gigantier.sdk.auth;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+
+/**
+ * Single-flight token renewal. Only one token request per grant type is in flight at a time,
+ * every caller asking for a renewal meanwhile is parked and resumed with the same result.
+ */
+public class TokenRefresher {
+
+  private final Map<String, List<Waiter>> inFlight = new HashMap<>();
+
+  /**
+   * Renew the token for the given grant type, joining the request already in flight if any.
+   *
+   * @param grantType oauth grant type, used as the coalescing key
+   * @param fetcher performs the actual token request, only invoked by the first caller
+   */
+  public void refresh(final String grantType, final Fetcher fetcher,
+                      final ResponseListener<Credential> responseListener,
+                      final ErrorListener errorListener) {
+
+    boolean leader;
+    synchronized (inFlight) {
+      List<Waiter> waiters = inFlight.get(grantType);
+      leader = waiters == null;
+      if (leader) {
+        waiters = new ArrayList<>();
+        inFlight.put(grantType, waiters);
+      }
+      waiters.add(new Waiter(responseListener, errorListener));
+    }
+
+    if (!leader) return;
+
+    fetcher.fetch(credential -> {
+      for (Waiter waiter : complete(grantType)) waiter.responseListener.onResponse(credential);
+    }, (code, msg) -> {
+      for (Waiter waiter : complete(grantType)) waiter.errorListener.onError(code, msg);
+    });
+  }
+
+  /**
+   * @return true if a renewal for the given grant type is in flight
+   */
+  public boolean isRefreshing(final String grantType) {
+    synchronized (inFlight) {
+      return inFlight.containsKey(grantType);
+    }
+  }
+
+  private List<Waiter> complete(final String grantType) {
+    synchronized (inFlight) {
+      List<Waiter> waiters = inFlight.remove(grantType);
+      return waiters != null ? waiters : new ArrayList<>();
+    }
+  }
+
+  public interface Fetcher {
+
+    void fetch(ResponseListener<Credential> responseListener, ErrorListener errorListener);
+
+  }
+
+  private static class Waiter {
+
+    final ResponseListener<Credential> responseListener;
+    final ErrorListener errorListener;
+
+    Waiter(ResponseListener<Credential> responseListener, ErrorListener errorListener) {
+      this.responseListener = responseListener;
+      this.errorListener = errorListener;
+    }
+
+  }
+
+}
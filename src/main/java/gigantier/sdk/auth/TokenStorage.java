@@ -0,0 +1,23 @@
+package gigantier.sdk.auth;
+
+/**
+ * Persistence backend for tokens. Implementations should write asynchronously (like
+ * SharedPreferences apply()), reads only happen once when the store is loaded.
+ */
+public interface TokenStorage {
+
+  String APP = "app";
+  String USER = "user";
+
+  /**
+   * @param type {@link #APP} or {@link #USER}
+   * @return stored token, or {@link Token#EMPTY}
+   */
+  Token load(String type);
+
+  /**
+   * @param type {@link #APP} or {@link #USER}
+   */
+  void save(String type, Token token);
+
+}
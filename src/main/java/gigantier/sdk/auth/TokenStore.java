@@ -0,0 +1,77 @@
+package gigantier.sdk.auth;
+
+/**
+ * In-memory token cache in front of a {@link TokenStorage}. The storage is read once, on first
+ * use, then lookups never touch it; every credential change is written behind in a single batched write.
+ */
+public class TokenStore {
+
+  private final TokenStorage storage;
+
+  private volatile boolean loaded;
+  private volatile Token appToken;
+  private volatile Token userToken;
+
+  public TokenStore(TokenStorage storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Read the stored tokens, if not done yet. Performs disk I/O with the default storage.
+   */
+  public void load() {
+    if (loaded) return;
+
+    synchronized (this) {
+      if (loaded) return;
+      appToken = load(TokenStorage.APP);
+      userToken = load(TokenStorage.USER);
+      loaded = true;
+    }
+  }
+
+  /**
+   * @return true once the stored tokens are in memory, so lookups do no I/O
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public Token getAppToken() {
+    load();
+    return appToken;
+  }
+
+  public Token getUserToken() {
+    load();
+    return userToken;
+  }
+
+  public Token setAppCredential(Credential credential) {
+    load();
+    Token token = Token.from(credential);
+    appToken = token;
+    storage.save(TokenStorage.APP, token);
+    return token;
+  }
+
+  public Token setUserCredential(Credential credential) {
+    load();
+    Token token = Token.from(credential);
+    userToken = token;
+    storage.save(TokenStorage.USER, token);
+    return token;
+  }
+
+  public void clearUserToken() {
+    load();
+    userToken = Token.EMPTY;
+    storage.save(TokenStorage.USER, Token.EMPTY);
+  }
+
+  private Token load(String type) {
+    Token token = storage.load(type);
+    return token != null ? token : Token.EMPTY;
+  }
+
+}
@@ -0,0 +1,136 @@
+package gigantier.sdk.batch;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gigantier.sdk.listeners.BatchListener;
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+
+/**
+ * Executes a list of calls concurrently, at most {@code parallelism} at a time, with tokens
+ * resolved once for the whole batch. Completes once every call has a result.
+ */
+public class Batch {
+
+  private final List<CallSpec> specs;
+  private final int parallelism;
+  private final BatchListener batchListener;
+  private final Dispatcher dispatcher;
+  private final CallResult[] results;
+
+  private String appToken;
+  private String userToken;
+  private CallResult appTokenError;
+  private CallResult userTokenError;
+  private int next;
+  private int pending;
+  private int freeSlots;
+  private boolean dispatching;
+
+  public Batch(List<CallSpec> specs, int parallelism, BatchListener batchListener, Dispatcher dispatcher) {
+    this.specs = new ArrayList<>(specs);
+    this.parallelism = Math.max(1, parallelism);
+    this.batchListener = batchListener;
+    this.dispatcher = dispatcher;
+    this.results = new CallResult[specs.size()];
+    this.pending = specs.size();
+  }
+
+  /**
+   * @param authenticated true for the user token, false for the app token
+   * @return true if any call of the batch needs that token
+   */
+  public boolean needsToken(boolean authenticated) {
+    for (CallSpec spec : specs) if (spec.authenticated == authenticated) return true;
+    return false;
+  }
+
+  public synchronized void setToken(boolean authenticated, String token) {
+    if (authenticated) userToken = token;
+    else appToken = token;
+  }
+
+  /**
+   * Token could not be resolved, calls that need it fail with the given error.
+   */
+  public synchronized void setTokenError(boolean authenticated, int code, String msg) {
+    CallResult error = new CallResult(null, null, code, msg);
+    if (authenticated) userTokenError = error;
+    else appTokenError = error;
+  }
+
+  public void start() {
+    if (specs.isEmpty()) {
+      batchListener.onComplete(new ArrayList<>());
+      return;
+    }
+
+    synchronized (this) {
+      freeSlots = parallelism;
+    }
+    dispatch();
+  }
+
+  /**
+   * Dispatch calls while there are free slots. Calls completing meanwhile, even synchronously
+   * within the loop, only free their slot, so the stack does not grow with the batch.
+   */
+  private void dispatch() {
+    synchronized (this) {
+      if (dispatching) return;
+      dispatching = true;
+    }
+
+    while (true) {
+      final int index;
+      final CallSpec spec;
+      final String token;
+      final CallResult tokenError;
+
+      synchronized (this) {
+        if (freeSlots == 0 || next >= specs.size()) {
+          dispatching = false;
+          return;
+        }
+        freeSlots--;
+        index = next++;
+        spec = specs.get(index);
+        token = spec.authenticated ? userToken : appToken;
+        tokenError = spec.authenticated ? userTokenError : appTokenError;
+      }
+
+      if (tokenError != null) {
+        complete(index, new CallResult(spec, null, tokenError.errorCode, tokenError.errorMessage));
+        continue;
+      }
+
+      dispatcher.dispatch(spec, token,
+          response -> complete(index, new CallResult(spec, response, 0, null)),
+          (code, msg) -> complete(index, new CallResult(spec, null, code, msg)));
+    }
+  }
+
+  private void complete(int index, CallResult result) {
+    boolean done;
+    synchronized (this) {
+      results[index] = result;
+      done = --pending == 0;
+      freeSlots++;
+    }
+
+    if (done) batchListener.onComplete(Arrays.asList(results));
+    else dispatch();
+  }
+
+  public interface Dispatcher {
+
+    void dispatch(CallSpec spec, String token, ResponseListener<JSONObject> responseListener,
+                  ErrorListener errorListener);
+
+  }
+
+}
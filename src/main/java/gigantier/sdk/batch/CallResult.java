@@ -0,0 +1,26 @@
+package gigantier.sdk.batch;
+
+import org.json.JSONObject;
+
+/**
+ * Result of a call executed within a batch. Holds either the response or the error.
+ */
+public class CallResult {
+
+  public final CallSpec spec;
+  public final JSONObject response;
+  public final int errorCode;
+  public final String errorMessage;
+
+  CallResult(CallSpec spec, JSONObject response, int errorCode, String errorMessage) {
+    this.spec = spec;
+    this.response = response;
+    this.errorCode = errorCode;
+    this.errorMessage = errorMessage;
+  }
+
+  public boolean isSuccess() {
+    return response != null;
+  }
+
+}
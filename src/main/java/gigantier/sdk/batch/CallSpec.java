@@ -0,0 +1,31 @@
+package gigantier.sdk.batch;
+
+import java.util.Map;
+
+/**
+ * Api call to be executed within a batch.
+ */
+public class CallSpec {
+
+  public String uri;
+  public Map<String, Object> body;
+  public boolean authenticated;
+
+  public CallSpec(String uri) {
+    this(uri, null, false);
+  }
+
+  public CallSpec(String uri, Map<String, Object> body) {
+    this(uri, body, false);
+  }
+
+  /**
+   * @param authenticated true to call with the user token, as authenticatedCall()
+   */
+  public CallSpec(String uri, Map<String, Object> body, boolean authenticated) {
+    this.uri = uri;
+    this.body = body;
+    this.authenticated = authenticated;
+  }
+
+}
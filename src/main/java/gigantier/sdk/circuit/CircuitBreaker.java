@@ -0,0 +1,215 @@
+package gigantier.sdk.circuit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import gigantier.sdk.listeners.CircuitListener;
+import gigantier.sdk.utils.Clock;
+
+/**
+ * Circuit breaker of one endpoint. Closed, it records the outcome of the calls in a sliding
+ * window and opens when too many fail or are slow. Open, calls fail fast until the open duration
+ * elapses; then it is half open and lets a few probe calls through, closing if they all succeed
+ * or opening again for a longer duration otherwise.
+ */
+public class CircuitBreaker {
+
+  private final String uri;
+  private final CircuitPolicy policy;
+  private final CircuitListener listener;
+  private final Clock clock;
+
+  private final long[] times;
+  private final boolean[] failures;
+  private final boolean[] slowCalls;
+  private int next;
+  private int recorded;
+
+  private CircuitState state = CircuitState.CLOSED;
+  private long generation;
+  private long openedAt;
+  private long openDuration;
+  private int probesLeft;
+  private int probesSucceeded;
+
+  /**
+   * @param listener notified of state changes, or null
+   */
+  public CircuitBreaker(String uri, CircuitPolicy policy, CircuitListener listener) {
+    this(uri, policy, listener, Clock.ELAPSED_REALTIME);
+  }
+
+  /**
+   * @param listener notified of state changes, or null
+   * @param clock time source of the window and open durations
+   */
+  public CircuitBreaker(String uri, CircuitPolicy policy, CircuitListener listener, Clock clock) {
+    this.uri = uri;
+    this.policy = policy;
+    this.listener = listener;
+    this.clock = clock;
+    this.times = new long[Math.max(1, policy.windowSize)];
+    this.failures = new boolean[times.length];
+    this.slowCalls = new boolean[times.length];
+    this.openDuration = policy.openDuration;
+  }
+
+  public synchronized CircuitState getState() {
+    return state;
+  }
+
+  /**
+   * @return true if calls fail fast, without taking a probe permit
+   */
+  public synchronized boolean isOpen() {
+    return state == CircuitState.OPEN && now() < openedAt + openDuration;
+  }
+
+  /**
+   * @return permit to report the outcome of the call to, or null if the call must fail fast
+   */
+  public Permit tryAcquire() {
+    Permit permit;
+    boolean halfOpened = false;
+
+    synchronized (this) {
+      if (state == CircuitState.OPEN) {
+        if (now() < openedAt + openDuration) return null;
+        moveTo(CircuitState.HALF_OPEN);
+        probesLeft = Math.max(1, policy.probes);
+        probesSucceeded = 0;
+        halfOpened = true;
+      }
+
+      if (state == CircuitState.HALF_OPEN) {
+        if (probesLeft == 0) permit = null;
+        else {
+          probesLeft--;
+          permit = new Permit(this, generation, true);
+        }
+      } else {
+        permit = new Permit(this, generation, false);
+      }
+    }
+
+    if (halfOpened) notifyState(CircuitState.HALF_OPEN);
+    return permit;
+  }
+
+  private void onResult(final Permit permit, final boolean failure, final long latency) {
+    boolean slow = latency >= policy.slowCallDuration;
+    CircuitState changed = null;
+
+    synchronized (this) {
+      if (permit.generation != generation) return; // granted before the last state change
+
+      long now = now();
+      if (permit.probe) {
+        if (failure || slow) changed = open(now, Math.min(policy.maxOpenDuration,
+            (long) (openDuration * policy.openDurationMultiplier)));
+        else if (++probesSucceeded >= Math.max(1, policy.probes)) changed = close();
+      } else if (state == CircuitState.CLOSED) {
+        record(now, failure, slow);
+        if (shouldOpen(now)) changed = open(now, policy.openDuration);
+      }
+    }
+
+    if (changed != null) notifyState(changed);
+  }
+
+  private synchronized void onIgnored(final Permit permit) {
+    if (permit.probe && permit.generation == generation) probesLeft++;
+  }
+
+  private void record(final long now, final boolean failure, final boolean slow) {
+    times[next] = now;
+    failures[next] = failure;
+    slowCalls[next] = slow;
+    next = (next + 1) % times.length;
+    recorded = Math.min(recorded + 1, times.length);
+  }
+
+  private boolean shouldOpen(final long now) {
+    int calls = 0;
+    int failed = 0;
+    int slow = 0;
+    for (int i = 0; i < recorded; i++) {
+      if (now - times[i] > policy.windowDuration) continue;
+      calls++;
+      if (failures[i]) failed++;
+      if (slowCalls[i]) slow++;
+    }
+
+    if (calls < Math.max(1, policy.minCalls)) return false;
+    return failed >= policy.errorRate * calls || slow >= policy.slowCallRate * calls;
+  }
+
+  private CircuitState open(final long now, final long duration) {
+    moveTo(CircuitState.OPEN);
+    openedAt = now;
+    openDuration = duration;
+    return CircuitState.OPEN;
+  }
+
+  private CircuitState close() {
+    moveTo(CircuitState.CLOSED);
+    openDuration = policy.openDuration;
+    recorded = 0;
+    next = 0;
+    return CircuitState.CLOSED;
+  }
+
+  private void moveTo(final CircuitState newState) {
+    state = newState;
+    generation++;
+  }
+
+  private void notifyState(final CircuitState newState) {
+    if (listener != null) listener.onStateChanged(uri, newState);
+  }
+
+  private long now() {
+    return clock.now();
+  }
+
+  /**
+   * Right to make a call. Exactly one outcome is reported, later ones are ignored.
+   */
+  public static class Permit {
+
+    /**
+     * Permit of calls not guarded by a circuit breaker.
+     */
+    public static final Permit UNTRACKED = new Permit(null, 0, false);
+
+    private final CircuitBreaker breaker;
+    private final long generation;
+    private final boolean probe;
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    Permit(CircuitBreaker breaker, long generation, boolean probe) {
+      this.breaker = breaker;
+      this.generation = generation;
+      this.probe = probe;
+    }
+
+    /**
+     * @param latency millis to the response
+     */
+    public void onSuccess(long latency) {
+      if (breaker != null && reported.compareAndSet(false, true)) breaker.onResult(this, false, latency);
+    }
+
+    public void onFailure() {
+      if (breaker != null && reported.compareAndSet(false, true)) breaker.onResult(this, true, 0);
+    }
+
+    /**
+     * The call was not made or was canceled, its outcome tells nothing about the endpoint.
+     */
+    public void onIgnored() {
+      if (breaker != null && reported.compareAndSet(false, true)) breaker.onIgnored(this);
+    }
+
+  }
+
+}
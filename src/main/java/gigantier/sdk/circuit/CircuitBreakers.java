@@ -0,0 +1,81 @@
+package gigantier.sdk.circuit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gigantier.sdk.listeners.CircuitListener;
+import gigantier.sdk.utils.Clock;
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Circuit breakers of a client, one per endpoint, the auth uri included. The endpoints tracked
+ * are bounded, the least recently used breaker is dropped to make room.
+ */
+public class CircuitBreakers {
+
+  private final CircuitPolicy policy;
+  private final CircuitListener listener;
+  private final Clock clock;
+  private final Map<String, CircuitBreaker> breakers = new LinkedHashMap<String, CircuitBreaker>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CircuitBreaker> eldest) {
+      return size() > Constants.MAX_CIRCUITS;
+    }
+  };
+
+  /**
+   * @param policy circuit policy, or null to disable circuit breaking
+   * @param listener notified of state changes, or null
+   */
+  public CircuitBreakers(CircuitPolicy policy, CircuitListener listener) {
+    this(policy, listener, Clock.ELAPSED_REALTIME);
+  }
+
+  /**
+   * @param policy circuit policy, or null to disable circuit breaking
+   * @param listener notified of state changes, or null
+   * @param clock time source of the breakers
+   */
+  public CircuitBreakers(CircuitPolicy policy, CircuitListener listener, Clock clock) {
+    this.policy = policy;
+    this.listener = listener;
+    this.clock = clock;
+  }
+
+  /**
+   * @return permit to report the outcome of the call to, or null if the call must fail fast
+   */
+  public CircuitBreaker.Permit tryAcquire(final String uri) {
+    return policy != null ? breaker(uri).tryAcquire() : CircuitBreaker.Permit.UNTRACKED;
+  }
+
+  /**
+   * @return true if calls to the endpoint fail fast
+   */
+  public boolean isOpen(final String uri) {
+    CircuitBreaker breaker = find(uri);
+    return breaker != null && breaker.isOpen();
+  }
+
+  /**
+   * @return state of the endpoint circuit, closed if not tracked
+   */
+  public CircuitState getState(final String uri) {
+    CircuitBreaker breaker = find(uri);
+    return breaker != null ? breaker.getState() : CircuitState.CLOSED;
+  }
+
+  private synchronized CircuitBreaker find(final String uri) {
+    return breakers.get(uri);
+  }
+
+  private synchronized CircuitBreaker breaker(final String uri) {
+    CircuitBreaker breaker = breakers.get(uri);
+    if (breaker == null) {
+      breaker = new CircuitBreaker(uri, policy, listener, clock);
+      breakers.put(uri, breaker);
+    }
+    return breaker;
+  }
+
+}
@@ -0,0 +1,23 @@
+package gigantier.sdk.circuit;
+
+import gigantier.sdk.utils.Constants;
+
+/**
+ * When circuits open and how they are probed. A circuit opens when, among its last windowSize
+ * calls younger than windowDuration, and at least minCalls, the error rate or the slow call rate
+ * reaches its threshold. Errors are network errors and 5xx responses.
+ */
+public class CircuitPolicy {
+
+  public int windowSize = 20; // last calls evaluated
+  public long windowDuration = Constants.CIRCUIT_WINDOW_DURATION; // millis, older calls are ignored
+  public int minCalls = 10;
+  public float errorRate = 0.5f;
+  public long slowCallDuration = Constants.CIRCUIT_SLOW_CALL_DURATION; // millis to the response
+  public float slowCallRate = 0.8f;
+  public long openDuration = Constants.CIRCUIT_OPEN_DURATION; // millis failing fast before the first probe
+  public float openDurationMultiplier = 2f; // applied after every failed probe
+  public long maxOpenDuration = Constants.CIRCUIT_MAX_OPEN_DURATION;
+  public int probes = 1; // calls let through when half open, all of them must succeed to close
+
+}
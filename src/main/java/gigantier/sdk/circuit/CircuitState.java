@@ -0,0 +1,12 @@
+package gigantier.sdk.circuit;
+
+/**
+ * Circuit breaker states.
+ */
+public enum CircuitState {
+
+  CLOSED, // calls go through
+  OPEN, // calls fail fast
+  HALF_OPEN // probe calls go through, the others fail fast
+
+}
@@ -0,0 +1,19 @@
+package gigantier.sdk.endpoints;
+
+/**
+ * Error of a blocking or future call, with the code and message an error listener would get.
+ */
+public class ApiException extends Exception {
+
+  private final int code;
+
+  public ApiException(int code, String msg) {
+    super(code + " - " + msg);
+    this.code = code;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+}
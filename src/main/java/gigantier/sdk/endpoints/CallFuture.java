@@ -0,0 +1,96 @@
+package gigantier.sdk.endpoints;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+
+/**
+ * Future result of a call, completed on the network thread. Errors are thrown by {@link #get()}
+ * as an {@link ExecutionException} caused by an {@link ApiException}.
+ */
+public class CallFuture<T> implements Future<T> {
+
+  private final CountDownLatch done = new CountDownLatch(1);
+  private CallHandle handle;
+  private boolean completed;
+  private boolean canceled;
+  private T result;
+  private ApiException error;
+
+  public synchronized void setHandle(final CallHandle handle) {
+    this.handle = handle;
+  }
+
+  public ResponseListener<T> responseListener() {
+    return response -> {
+      synchronized (this) {
+        if (completed) return;
+        completed = true;
+        result = response;
+      }
+      done.countDown();
+    };
+  }
+
+  public ErrorListener errorListener() {
+    return (code, msg) -> {
+      synchronized (this) {
+        if (completed) return;
+        completed = true;
+        error = new ApiException(code, msg);
+      }
+      done.countDown();
+    };
+  }
+
+  @Override
+  public boolean cancel(final boolean mayInterruptIfRunning) {
+    CallHandle canceledHandle;
+    synchronized (this) {
+      if (completed) return false;
+      completed = true;
+      canceled = true;
+      canceledHandle = handle;
+    }
+
+    if (canceledHandle != null) canceledHandle.cancel();
+    done.countDown();
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return canceled;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return completed;
+  }
+
+  @Override
+  public T get() throws InterruptedException, ExecutionException {
+    done.await();
+    return result();
+  }
+
+  @Override
+  public T get(final long timeout, final TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    if (!done.await(timeout, unit)) throw new TimeoutException();
+    return result();
+  }
+
+  private synchronized T result() throws ExecutionException {
+    if (canceled) throw new CancellationException();
+    if (error != null) throw new ExecutionException(error);
+    return result;
+  }
+
+}
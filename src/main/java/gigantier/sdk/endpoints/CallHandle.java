@@ -0,0 +1,217 @@
+package gigantier.sdk.endpoints;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+import gigantier.sdk.metrics.CallTrace;
+
+/**
+ * Handle of a call in progress. A call completes once, with a response, an error or its
+ * deadline expiring; once canceled its listeners are never called. A call completed with a
+ * response may still deliver updates, like a revalidated cached response, until canceled.
+ */
+public class CallHandle {
+
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "gigantier-deadline");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Object tag;
+  private final Priority priority;
+  private final CallTrace trace;
+  private final Executor executor;
+  private final List<Runnable> cancelActions = new ArrayList<>();
+  private final List<Runnable> finishActions = new ArrayList<>();
+  private ScheduledFuture<?> deadlineTimer;
+  private boolean finished;
+  private boolean responded;
+  private volatile boolean canceled;
+
+  public CallHandle(Object tag) {
+    this(tag, Priority.NORMAL);
+  }
+
+  public CallHandle(Object tag, Priority priority) {
+    this(tag, priority, null);
+  }
+
+  /**
+   * @param trace measures of the call, or null
+   */
+  public CallHandle(Object tag, Priority priority, CallTrace trace) {
+    this(tag, priority, trace, null);
+  }
+
+  /**
+   * @param trace measures of the call, or null
+   * @param executor executor delivering the results of the call, or null for the default one
+   */
+  public CallHandle(Object tag, Priority priority, CallTrace trace, Executor executor) {
+    this.tag = tag;
+    this.priority = priority;
+    this.trace = trace;
+    this.executor = executor;
+  }
+
+  public Object getTag() {
+    return tag;
+  }
+
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return executor delivering the results of the call, or null for the default one
+   */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * @return measures of the call, or null
+   */
+  public CallTrace getTrace() {
+    return trace;
+  }
+
+  /**
+   * Cancel the call, releasing its requests in flight. Its listeners won't be called, updates
+   * included if it has already completed.
+   */
+  public void cancel() {
+    List<Runnable> actions;
+    synchronized (this) {
+      canceled = true;
+      if (finished) return;
+      actions = new ArrayList<>(cancelActions);
+    }
+
+    finish();
+    for (Runnable action : actions) action.run();
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  public synchronized boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Fail the call with the given error if it has not finished after the given millis.
+   */
+  public void startDeadline(final long timeout, final ErrorListener errorListener, final int code, final String msg) {
+    if (timeout <= 0) return;
+
+    ScheduledFuture<?> timer = TIMER.schedule(() -> {
+      List<Runnable> actions;
+      synchronized (this) {
+        if (finished) return;
+        actions = new ArrayList<>(cancelActions);
+      }
+
+      if (!finish()) return;
+      for (Runnable action : actions) action.run();
+      errorListener.onError(code, msg);
+    }, timeout, TimeUnit.MILLISECONDS);
+
+    synchronized (this) {
+      deadlineTimer = timer;
+    }
+  }
+
+  /**
+   * Register an action run if the call is canceled or its deadline expires, like canceling the
+   * request in flight.
+   */
+  public void onCancel(final Runnable action) {
+    boolean run;
+    synchronized (this) {
+      run = canceled;
+      if (!run) cancelActions.add(action);
+    }
+    if (run) action.run();
+  }
+
+  /**
+   * Register an action run once the call finishes, whatever the outcome.
+   */
+  public void onFinish(final Runnable action) {
+    boolean run;
+    synchronized (this) {
+      run = finished;
+      if (!run) finishActions.add(action);
+    }
+    if (run) action.run();
+  }
+
+  /**
+   * @return listener delivering the response only if the call has not finished yet
+   */
+  public <T> ResponseListener<T> wrap(final ResponseListener<T> responseListener) {
+    return wrap(responseListener, null);
+  }
+
+  /**
+   * @param updateListener called with the responses following the one completing the call,
+   * until canceled, or null to drop them
+   * @return listener delivering the response if the call has not finished yet, and the later
+   * ones to the update listener
+   */
+  public <T> ResponseListener<T> wrap(final ResponseListener<T> responseListener,
+                                      final ResponseListener<T> updateListener) {
+    return response -> {
+      if (finish()) {
+        synchronized (this) {
+          responded = true;
+        }
+        responseListener.onResponse(response);
+      } else if (updateListener != null && isUpdatable()) {
+        updateListener.onResponse(response);
+      }
+    };
+  }
+
+  /**
+   * @return listener delivering the error only if the call has not finished yet
+   */
+  public ErrorListener wrap(final ErrorListener errorListener) {
+    return (code, msg) -> {
+      if (finish()) errorListener.onError(code, msg);
+    };
+  }
+
+  private synchronized boolean isUpdatable() {
+    return responded && !canceled;
+  }
+
+  /**
+   * @return true if the call was running and is now finished
+   */
+  private boolean finish() {
+    List<Runnable> actions;
+    synchronized (this) {
+      if (finished) return false;
+      finished = true;
+      if (deadlineTimer != null) deadlineTimer.cancel(false);
+      actions = new ArrayList<>(finishActions);
+      finishActions.clear();
+      cancelActions.clear();
+    }
+
+    for (Runnable action : actions) action.run();
+    return !canceled;
+  }
+
+}
@@ -0,0 +1,27 @@
+package gigantier.sdk.endpoints;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Per call options.
+ */
+public class CallOptions {
+
+  public Object tag; // to cancel calls in bulk, usually the screen owning them
+  public long deadline = -1; // millis for the whole call, token renewal included, -1 for config.callDeadline
+  public Priority priority = Priority.NORMAL;
+  public Executor executor; // delivering the results, null for the client one
+
+  public CallOptions() {
+  }
+
+  public CallOptions(Object tag) {
+    this.tag = tag;
+  }
+
+  public CallOptions(Object tag, Priority priority) {
+    this.tag = tag;
+    this.priority = priority;
+  }
+
+}
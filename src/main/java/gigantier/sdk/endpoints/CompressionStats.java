@@ -0,0 +1,62 @@
+package gigantier.sdk.endpoints;
+
+/**
+ * Byte counters of gzip compressed request and response bodies.
+ */
+public class CompressionStats {
+
+  private long requestCount;
+  private long requestBytes;
+  private long compressedRequestBytes;
+  private long responseCount;
+  private long responseBytes;
+  private long compressedResponseBytes;
+
+  synchronized void onRequest(final long bytes, final long compressedBytes) {
+    requestCount++;
+    requestBytes += bytes;
+    compressedRequestBytes += compressedBytes;
+  }
+
+  synchronized void onResponse(final long bytes, final long compressedBytes) {
+    responseCount++;
+    responseBytes += bytes;
+    compressedResponseBytes += compressedBytes;
+  }
+
+  /**
+   * @return compressed request bodies sent
+   */
+  public synchronized long requestCount() {
+    return requestCount;
+  }
+
+  /**
+   * @return compressed size over original size of the request bodies sent, 1 if none
+   */
+  public synchronized float requestRatio() {
+    return requestBytes > 0 ? (float) compressedRequestBytes / requestBytes : 1f;
+  }
+
+  /**
+   * @return compressed response bodies received
+   */
+  public synchronized long responseCount() {
+    return responseCount;
+  }
+
+  /**
+   * @return compressed size over decoded size of the response bodies received, 1 if none
+   */
+  public synchronized float responseRatio() {
+    return responseBytes > 0 ? (float) compressedResponseBytes / responseBytes : 1f;
+  }
+
+  /**
+   * @return bytes not transferred thanks to compression
+   */
+  public synchronized long savedBytes() {
+    return requestBytes - compressedRequestBytes + responseBytes - compressedResponseBytes;
+  }
+
+}
@@ -1,5 +1,17 @@
 package gigantier.sdk.endpoints;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+import gigantier.sdk.auth.TokenStorage;
+import gigantier.sdk.circuit.CircuitPolicy;
+import gigantier.sdk.listeners.CircuitListener;
+import gigantier.sdk.listeners.MetricsListener;
+import gigantier.sdk.listeners.OfflineListener;
+import gigantier.sdk.transport.Transport;
+import gigantier.sdk.utils.Clock;
 import gigantier.sdk.utils.Constants;
 
 public class Config {
@@ -13,6 +25,45 @@ public class Config {
   public String authUri = Constants.AUTH_URI;
   public String contentType = Constants.CONTENT_TYPE;
   public String application;
+  public TokenStorage tokenStorage; // null to keep tokens in shared preferences
+  public boolean refreshAhead = false;
+  public float refreshAheadFraction = Constants.REFRESH_AHEAD_FRACTION;
+  public float refreshAheadJitter = Constants.REFRESH_AHEAD_JITTER;
+  public long idleTimeout = Constants.IDLE_TIMEOUT;
+  public ScheduledExecutorService refreshAheadExecutor; // renewals are scheduled on it, null for a dedicated thread
+  public Transport transport; // null for the network core transport
+  public Executor deliveryExecutor; // delivering call results, null for the network core one
+  public long maxResponseSize = 0; // bytes, 0 for no limit
+  public int connectTimeout = Constants.CONNECT_TIMEOUT; // millis
+  public int readTimeout = Constants.READ_TIMEOUT; // millis
+  public long callDeadline = Constants.CALL_DEADLINE; // millis for a whole call, token renewal included, 0 for none
+  public int maxRequestsInFlight = 0; // 0 for no limit, queueing is left to the transport
+  public int maxQueuedRequests = Constants.MAX_QUEUED_REQUESTS; // waiting for a slot when maxRequestsInFlight is set
+  public boolean dropLowestPriority = true; // when the queue is full, drop lower priority requests instead of rejecting
+  public RetryPolicy retryPolicy = new RetryPolicy();
+  public Map<String, RetryPolicy> retryPolicies = new HashMap<>(); // uri -> policy overriding retryPolicy
+  public float retryBudgetRatio = Constants.RETRY_BUDGET_RATIO; // retries allowed per request
+  public int retryBudgetMax = Constants.RETRY_BUDGET_MAX;
+  public RateLimit rateLimit; // of all the requests, null for none
+  public Map<String, RateLimit> rateLimits = new HashMap<>(); // uri -> limit of the endpoint
+  public int maxRateLimitedRequests = Constants.MAX_RATE_LIMITED_REQUESTS; // waiting for quota, more are rejected
+  public CircuitPolicy circuitPolicy; // per endpoint circuit breakers, null disables them
+  public CircuitListener circuitListener; // called when a circuit changes state, on the delivery executor
+  public Clock clock = Clock.ELAPSED_REALTIME; // time source of rate limits, circuit breakers and call latencies
+  public int batchParallelism = Constants.BATCH_PARALLELISM;
+  public int pagePrefetch = Constants.PAGE_PREFETCH;
+  public String pageOffsetParam = Constants.PAGE_OFFSET_PARAM;
+  public String pageLimitParam = Constants.PAGE_LIMIT_PARAM;
+  public int gzipThreshold = 0; // bytes, request bodies this large are gzip compressed, 0 disables it
+  public boolean acceptGzip = false; // ask for gzip compressed responses
+  public boolean deduplicateRequests = false; // identical mutations in flight would be merged too
+  public long responseCacheSize = 0; // bytes, 0 disables the response cache
+  public boolean diskCache = false; // keep cached responses on disk too, sized in the network core
+  public Map<String, Long> cacheTtls = new HashMap<>(); // uri -> ttl in millis, only these uris are cached, and only for app token calls
+  public MetricsListener metricsListener; // called with the metrics of every finished call
+  public boolean offlineQueue = false; // persist queued calls and replay them when connected
+  public int offlineParallelism = Constants.OFFLINE_PARALLELISM; // queued calls replayed at once
+  public OfflineListener offlineListener; // called as queued calls are replayed or rejected
 
   public String buildUrl(String uri) {
     return this.protocol + "://" + this.host + buildPath(uri);
@@ -0,0 +1,15 @@
+package gigantier.sdk.endpoints;
+
+import android.util.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Decodes a json response straight from the response stream into a typed object.
+ * Called on a network thread.
+ */
+public interface Decoder<T> {
+
+  T decode(JsonReader reader) throws IOException;
+
+}
@@ -0,0 +1,154 @@
+package gigantier.sdk.endpoints;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Disk cache of api responses, surviving process death. Bounded by size in bytes, least recently
+ * used entries are evicted first. Methods perform disk I/O and must not be called on the main thread.
+ */
+public class DiskResponseCache {
+
+  private static final String TAG = DiskResponseCache.class.getName();
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final File directory;
+  private final long maxSize;
+
+  /**
+   * @param directory cache directory, created if missing
+   * @param maxSize max size of the cache files in bytes
+   */
+  public DiskResponseCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return cached entry, or null if missing
+   */
+  public synchronized Entry get(final String key) {
+    File file = fileFor(key);
+    if (!file.exists()) return null;
+
+    try {
+      JSONObject json = new JSONObject(new String(read(file), UTF_8));
+      if (!key.equals(json.getString("key"))) return null;
+
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(json.getString("body"), json.optString("etag", null),
+          json.optString("lastModified", null), json.getLong("storedAt"));
+    } catch (IOException | JSONException e) {
+      Log.e(TAG, "Cannot read cache entry, removing it.", e);
+      file.delete();
+      return null;
+    }
+  }
+
+  public synchronized void put(final String key, final Entry entry) {
+    if (!directory.exists() && !directory.mkdirs()) return;
+
+    File file = fileFor(key);
+    File tmp = new File(directory, file.getName() + ".tmp");
+
+    try {
+      JSONObject json = new JSONObject();
+      json.put("key", key);
+      json.put("body", entry.body);
+      json.put("etag", entry.etag);
+      json.put("lastModified", entry.lastModified);
+      json.put("storedAt", entry.storedAt);
+
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        out.write(json.toString().getBytes(UTF_8));
+      } finally {
+        out.close();
+      }
+
+      if (!tmp.renameTo(file)) tmp.delete();
+    } catch (IOException | JSONException e) {
+      Log.e(TAG, "Cannot write cache entry.", e);
+      tmp.delete();
+    }
+
+    trim();
+  }
+
+  public synchronized void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+    for (File file : files) file.delete();
+  }
+
+  private void trim() {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+
+    long size = 0;
+    for (File file : files) size += file.length();
+    if (size <= maxSize) return;
+
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      if (size <= maxSize) break;
+      size -= file.length();
+      file.delete();
+    }
+  }
+
+  private File fileFor(final String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+      StringBuilder name = new StringBuilder();
+      for (byte b : digest) name.append(String.format("%02x", b));
+      return new File(directory, name.toString());
+    } catch (NoSuchAlgorithmException e) {
+      return new File(directory, String.valueOf(key.hashCode()));
+    }
+  }
+
+  private static byte[] read(final File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  public static class Entry {
+
+    public final String body;
+    public final String etag;
+    public final String lastModified;
+    public final long storedAt;
+
+    public Entry(String body, String etag, String lastModified, long storedAt) {
+      this.body = body;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.storedAt = storedAt;
+    }
+
+  }
+
+}
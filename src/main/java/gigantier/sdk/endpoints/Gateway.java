@@ -1,99 +1,727 @@
 package gigantier.sdk.endpoints;
 
 import android.content.Context;
+import android.util.JsonReader;
 import android.util.Log;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.Request;
+import com.android.volley.toolbox.ByteArrayPool;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import gigantier.sdk.circuit.CircuitBreaker;
+import gigantier.sdk.circuit.CircuitBreakers;
+import gigantier.sdk.listeners.CircuitListener;
 import gigantier.sdk.listeners.ErrorListener;
 import gigantier.sdk.listeners.ResponseListener;
+import gigantier.sdk.metrics.CallTrace;
+import gigantier.sdk.metrics.Metrics;
+import gigantier.sdk.transport.LimitedInputStream;
+import gigantier.sdk.transport.Transport;
+import gigantier.sdk.transport.TransportCallback;
+import gigantier.sdk.transport.TransportRequest;
+import gigantier.sdk.transport.TransportResponse;
 import gigantier.sdk.utils.Constants;
 
 
 public class Gateway {
 
   private static final String TAG = Gateway.class.getName();
+  private static final ByteArrayPool BUFFER_POOL = new ByteArrayPool(Constants.BUFFER_POOL_SIZE);
+  private static final ScheduledExecutorService RETRY_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "gigantier-retry");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Executor DIRECT = Runnable::run;
 
-  private Context context;
-  private RequestQueue requestQueue;
+  private Transport transport;
 
   private Config config;
+  private final String baseUrl;
+  private ResponseCache responseCache;
+  private NetworkCore core;
+  private ExecutorService diskExecutor;
+  private Executor delivery;
+  private InFlightRequests<Waiter> inFlight = new InFlightRequests<>();
+  private RetryBudget retryBudget;
+  private RateLimiter rateLimiter;
+  private CircuitBreakers circuits;
+  private RequestScheduler scheduler;
+  private CompressionStats compressionStats = new CompressionStats();
+  private Metrics metrics = new Metrics();
 
   public Gateway(Context context, Config config) {
-    this.context = context;
+    this(NetworkCore.getDefault(context), config);
+  }
+
+  public Gateway(NetworkCore core, Config config) {
     this.config = config;
+    this.baseUrl = config.buildUrl("");
+    this.transport = config.transport != null ? config.transport : core.getTransport();
+    this.delivery = config.deliveryExecutor != null ? config.deliveryExecutor : core.getDeliveryExecutor();
+    this.retryBudget = new RetryBudget(config.retryBudgetRatio, config.retryBudgetMax);
+    this.rateLimiter = new RateLimiter(config.rateLimit, config.rateLimits, config.maxRateLimitedRequests,
+        RETRY_EXECUTOR, config.clock);
+    this.circuits = new CircuitBreakers(config.circuitPolicy, circuitListener(config.circuitListener), config.clock);
+    this.scheduler = new RequestScheduler(config.maxRequestsInFlight, config.maxQueuedRequests,
+        config.dropLowestPriority);
+    if (config.responseCacheSize > 0) this.responseCache = new ResponseCache(config.responseCacheSize);
+    // the disk cache itself is only resolved on the disk executor, keeping I/O off the constructor
+    this.core = core;
+    if (config.diskCache && core.hasDiskCache()) this.diskExecutor = core.getDiskExecutor();
+  }
+
+  /**
+   * @return response cache, or null if disabled
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * Drop the cached responses, in memory and on disk, like when the user changes.
+   */
+  public void clearCaches() {
+    if (responseCache != null) responseCache.clear();
+    if (diskExecutor != null) diskExecutor.execute(() -> core.getDiskCache().clear());
+  }
+
+  /**
+   * @return byte counters of compressed bodies
+   */
+  public CompressionStats getCompressionStats() {
+    return compressionStats;
+  }
+
+  /**
+   * @return aggregated call metrics
+   */
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return circuit breakers of the endpoints, tracking nothing unless config.circuitPolicy is set
+   */
+  public CircuitBreakers getCircuitBreakers() {
+    return circuits;
+  }
+
+  /**
+   * @return true if calls to the endpoint fail fast, as its circuit is open
+   */
+  public boolean isCircuitOpen(final String uri) {
+    return circuits.isOpen(uri);
+  }
+
+  /**
+   * @return calls that joined an identical request in flight instead of being sent
+   */
+  public long getDeduplicatedCount() {
+    return metrics.deduplicated();
+  }
+
+  /**
+   * Open a connection to the api host ahead of the first call, so it skips dns, tcp and tls
+   * setup. Sends a HEAD request whose response is discarded.
+   */
+  public void preconnect() {
+    transport.execute(new TransportRequest("HEAD", baseUrl, null, null, null), new TransportCallback() {
+      @Override
+      public void onResponse(TransportResponse response) {
+        Log.d(TAG, "Connected to " + baseUrl);
+      }
+
+      @Override
+      public void onFailure(Exception error) {
+        Log.d(TAG, "Cannot connect to " + baseUrl + ": " + error.getMessage());
+      }
+    });
   }
 
+  /**
+   * Exec api method. Responses of uris with a cache ttl are served from the memory cache and then
+   * the disk cache when enabled. Stale disk entries are delivered at once and revalidated in
+   * background, in which case the response listener is called a second time if the data changed.
+   */
   public void execMethod(final int method, final String uri, final Map<String, String> headers, final Map<String, Object> body,
                          final ResponseListener<JSONObject> responseListener,
                          final ErrorListener errorListener) {
+    execMethod(method, uri, headers, body, (CallHandle) null, responseListener, errorListener);
+  }
 
-    try {
-      JsonObjectRequest request = new JsonObjectRequest(method, config.buildUrl(uri), buildBody(body),
-          responseListener::onResponse,
-          onError(errorListener)) {
+  /**
+   * Exec api method on behalf of a call made with the app token, canceled along with it.
+   *
+   * @param handle call handle, or null
+   */
+  public void execMethod(final int method, final String uri, final Map<String, String> headers, final Map<String, Object> body,
+                         final CallHandle handle, final ResponseListener<JSONObject> responseListener,
+                         final ErrorListener errorListener) {
+    execMethod(method, uri, headers, body, handle, false, responseListener, errorListener);
+  }
 
-        public Map<String, String> getHeaders() {
-          return headers != null ? headers : new HashMap<>();
-        }
+  /**
+   * Exec api method on behalf of a call, canceled along with it. Responses of calls made with the
+   * user token are never cached, they hold data of the user.
+   *
+   * @param handle call handle, or null
+   * @param authenticated true if made with the user token, false for the app token
+   */
+  public void execMethod(final int method, final String uri, final Map<String, String> headers, final Map<String, Object> body,
+                         final CallHandle handle, final boolean authenticated,
+                         final ResponseListener<JSONObject> responseListener, final ErrorListener errorListener) {
 
-        @Override
-        public String getBodyContentType() {
-          return Constants.CONTENT_TYPE;
+    // a call with its own idempotency key, like a replayed offline call, is an operation of its
+    // own: never served from the cache nor merged with an identical request in flight
+    if (headers != null && headers.containsKey(Constants.IDEMPOTENCY_KEY_HEADER)) {
+      send(method, uri, headers, body, handle, (responseHeaders, response) -> responseListener.onResponse(response),
+          errorListener);
+      return;
+    }
+
+    final Long ttl = !authenticated && (responseCache != null || diskExecutor != null) ? config.cacheTtls.get(uri) : null;
+    if (ttl == null) {
+      fetch(method, uri, headers, body, handle, authenticated,
+          (responseHeaders, response) -> responseListener.onResponse(response), errorListener);
+      return;
+    }
+
+    final String cacheKey = RequestKey.of(method, uri, authenticated, body);
+
+    if (responseCache != null) {
+      String cached = responseCache.get(cacheKey);
+      if (cached != null) {
+        Log.d(TAG, "Response cache hit for " + uri);
+        onCacheHit(handle);
+        deliverCached(cached, responseListener, errorListener);
+        return;
+      }
+    }
+
+    if (diskExecutor == null) {
+      fetch(method, uri, headers, body, handle, authenticated, (responseHeaders, response) -> {
+        responseCache.put(cacheKey, response.toString(), ttl);
+        responseListener.onResponse(response);
+      }, errorListener);
+      return;
+    }
+
+    diskExecutor.execute(() -> {
+      DiskResponseCache.Entry entry = core.getDiskCache().get(cacheKey);
+
+      if (entry == null) {
+        deliveryOf(handle).execute(() -> fetch(method, uri, headers, body, handle, authenticated,
+            (responseHeaders, response) -> {
+              store(cacheKey, ttl, responseHeaders, response.toString(), System.currentTimeMillis());
+              responseListener.onResponse(response);
+            }, errorListener));
+        return;
+      }
+
+      boolean fresh = entry.storedAt + ttl > System.currentTimeMillis();
+      Log.d(TAG, "Disk cache hit for " + uri + (fresh ? "" : ", revalidating"));
+      onCacheHit(handle);
+
+      deliveryOf(handle).execute(() -> {
+        if (fresh && responseCache != null) responseCache.put(cacheKey, entry.body, ttl);
+        deliverCached(entry.body, responseListener, errorListener);
+        if (!fresh) revalidate(method, uri, headers, body, handle, cacheKey, ttl, entry, responseListener);
+      });
+    });
+  }
+
+  /**
+   * Exec api method, decoding the response with the given decoder on the network thread.
+   * Typed responses are not cached.
+   */
+  public <T> void execMethod(final int method, final String uri, final Map<String, String> headers,
+                             final Map<String, Object> body, final Decoder<T> decoder,
+                             final ResponseListener<T> responseListener, final ErrorListener errorListener) {
+    execMethod(method, uri, headers, body, null, decoder, responseListener, errorListener);
+  }
+
+  /**
+   * Exec api method on behalf of a call, decoding the response with the given decoder.
+   *
+   * @param handle call handle, or null
+   */
+  public <T> void execMethod(final int method, final String uri, final Map<String, String> headers,
+                             final Map<String, Object> body, final CallHandle handle, final Decoder<T> decoder,
+                             final ResponseListener<T> responseListener, final ErrorListener errorListener) {
+
+    send(method, uri, headers, body, handle, (in, contentLength) -> {
+      JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+      try {
+        return decoder.decode(reader);
+      } finally {
+        reader.close();
+      }
+    }, (responseHeaders, response) -> responseListener.onResponse(response), errorListener);
+  }
+
+  /**
+   * @param handle handle of the call the stale entry was delivered to, or null
+   */
+  private void revalidate(final int method, final String uri, final Map<String, String> headers,
+                          final Map<String, Object> body, final CallHandle handle, final String cacheKey,
+                          final long ttl, final DiskResponseCache.Entry entry,
+                          final ResponseListener<JSONObject> responseListener) {
+
+    Map<String, String> conditionalHeaders = new HashMap<>();
+    if (headers != null) conditionalHeaders.putAll(headers);
+    if (entry.etag != null) conditionalHeaders.put("If-None-Match", entry.etag);
+    if (entry.lastModified != null) conditionalHeaders.put("If-Modified-Since", entry.lastModified);
+
+    // outlives the call, which has its response already; the update is delivered on the call executor
+    Executor callDelivery = deliveryOf(handle);
+    CallHandle revalidation = new CallHandle(null, Priority.BACKGROUND, null, DIRECT);
+    send(method, uri, conditionalHeaders, body, revalidation, (responseHeaders, response) -> {
+      long now = System.currentTimeMillis();
+
+      if (response == null) {
+        Log.d(TAG, "Cached response for " + uri + " not modified");
+        // a 304 may omit the validators, the entry keeps its own then
+        Map<String, String> validators = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        validators.putAll(responseHeaders);
+        if (entry.etag != null && !validators.containsKey("ETag")) validators.put("ETag", entry.etag);
+        if (entry.lastModified != null && !validators.containsKey("Last-Modified")) {
+          validators.put("Last-Modified", entry.lastModified);
         }
+        store(cacheKey, ttl, validators, entry.body, now);
+        return;
+      }
+
+      String responseBody = response.toString();
+      store(cacheKey, ttl, responseHeaders, responseBody, now);
+      if (!responseBody.equals(entry.body)) callDelivery.execute(() -> responseListener.onResponse(response));
+    }, (code, msg) -> Log.e(TAG, "Cannot revalidate cached response for " + uri + ": " + code + " - " + msg));
+  }
 
-      };
+  private void store(final String cacheKey, final long ttl, final Map<String, String> responseHeaders,
+                     final String body, final long storedAt) {
+    if (responseCache != null) responseCache.put(cacheKey, body, ttl);
 
-      request.setRetryPolicy(new DefaultRetryPolicy(0, 0,0));
-      getRequestQueue().add(request);
+    String etag = responseHeaders.get("ETag");
+    String lastModified = responseHeaders.get("Last-Modified");
+    diskExecutor.execute(() -> core.getDiskCache().put(cacheKey, new DiskResponseCache.Entry(body, etag, lastModified, storedAt)));
+  }
+
+  private void deliverCached(final String cached, final ResponseListener<JSONObject> responseListener,
+                             final ErrorListener errorListener) {
+    try {
+      responseListener.onResponse(new JSONObject(cached));
     } catch (JSONException e) {
+      Log.e(TAG, "Cannot parse cached json response.", e);
+      errorListener.onError(-1, e.getMessage());
+    }
+  }
+
+  /**
+   * Send a json request, joining an identical one in flight when deduplication is enabled. Only
+   * requests made with the same credential are identical.
+   */
+  private void fetch(final int method, final String uri, final Map<String, String> headers, final Map<String, Object> body,
+                     final CallHandle handle, final boolean authenticated, final RawListener<JSONObject> rawListener,
+                     final ErrorListener errorListener) {
+
+    if (!config.deduplicateRequests) {
+      send(method, uri, headers, body, handle, rawListener, errorListener);
+      return;
+    }
+
+    final String key = RequestKey.of(method, uri, authenticated, body);
+    if (!inFlight.add(key, new Waiter(rawListener, errorListener, deliveryOf(handle)))) {
+      Log.d(TAG, "Joining request in flight to " + uri);
+      metrics.onDeduplicated();
+      return;
+    }
+
+    // shared by every joined call, so not canceled along with the first one; each call gets the
+    // results on its own executor
+    CallHandle shared = new CallHandle(null, handle != null ? handle.getPriority() : Priority.NORMAL, null, DIRECT);
+    send(method, uri, headers, body, shared, (responseHeaders, response) -> {
+      for (Waiter waiter : inFlight.complete(key)) {
+        waiter.executor.execute(() -> waiter.rawListener.onResponse(responseHeaders, response));
+      }
+    }, (code, msg) -> {
+      for (Waiter waiter : inFlight.complete(key)) waiter.executor.execute(() -> waiter.errorListener.onError(code, msg));
+    });
+  }
+
+  private void send(final int method, final String uri, final Map<String, String> headers, final Map<String, Object> body,
+                    final CallHandle handle, final RawListener<JSONObject> rawListener, final ErrorListener errorListener) {
+    send(method, uri, headers, body, handle, this::decodeJson, rawListener, errorListener);
+  }
+
+  private <T> void send(final int method, final String uri, final Map<String, String> headers,
+                        final Map<String, Object> body, final CallHandle handle, final ResponseDecoder<T> decoder,
+                        final RawListener<T> rawListener, final ErrorListener errorListener) {
+
+    if (handle != null && handle.isFinished()) return;
+
+    byte[] requestBody;
+    try {
+      requestBody = JsonBody.write(body, BUFFER_POOL);
+    } catch (IOException | IllegalArgumentException e) {
       Log.e(TAG, "Cannot build request json body.", e);
       errorListener.onError(-1, e.getMessage());
+      return;
     }
 
+    RetryPolicy retryPolicy = config.retryPolicies.containsKey(uri) ? config.retryPolicies.get(uri) : config.retryPolicy;
+
+    boolean compress = config.gzipThreshold > 0 && requestBody.length >= config.gzipThreshold;
+    if (compress) {
+      byte[] compressed = gzip(requestBody);
+      compress = compressed != null && compressed.length < requestBody.length;
+      if (compress) {
+        compressionStats.onRequest(requestBody.length, compressed.length);
+        requestBody = compressed;
+      }
+    }
+
+    // a key given by the caller is kept, like the one of a replayed offline call
+    boolean idempotencyKey = retryPolicy.idempotencyKey
+        && (headers == null || !headers.containsKey(Constants.IDEMPOTENCY_KEY_HEADER));
+
+    Map<String, String> requestHeaders = headers;
+    if (idempotencyKey || compress || config.acceptGzip) {
+      requestHeaders = new HashMap<>();
+      if (headers != null) requestHeaders.putAll(headers);
+      if (idempotencyKey) requestHeaders.put(Constants.IDEMPOTENCY_KEY_HEADER, UUID.randomUUID().toString());
+      if (compress) requestHeaders.put("Content-Encoding", Constants.GZIP);
+      if (config.acceptGzip) requestHeaders.put("Accept-Encoding", Constants.GZIP);
+    }
+
+    TransportRequest request = new TransportRequest(methodName(method), baseUrl + uri, requestHeaders,
+        requestBody, Constants.CONTENT_TYPE, handle, config.connectTimeout, config.readTimeout, priorityOf(uri, handle));
+    if (handle != null) handle.onCancel(() -> transport.cancel(handle));
+    if (handle != null && handle.getTrace() != null) handle.getTrace().onSent(requestBody.length);
+
+    retryBudget.onRequest();
+    execute(request, retryPolicy, 0, decoder, rawListener, errorListener);
   }
 
-  private JSONObject buildBody(Map<String, Object> body) throws JSONException {
-    JSONObject requestBody = new JSONObject();
-    for (String key: body.keySet()) {
-      requestBody.put(key, body.get(key));
+  private <T> void execute(final TransportRequest request, final RetryPolicy retryPolicy, final int attempt,
+                           final ResponseDecoder<T> decoder, final RawListener<T> rawListener,
+                           final ErrorListener errorListener) {
+
+    final CallTrace trace = traceOf(request);
+    final Executor callDelivery = deliveryOf(request.tag);
+    final String uri = request.url.substring(baseUrl.length());
+    final long queuedAt = config.clock.now();
+
+    if (circuits.isOpen(uri)) {
+      failFast(request, callDelivery, errorListener);
+      return;
     }
 
-    return requestBody;
+    // quota first, so requests waiting for it do not hold scheduler slots
+    rateLimiter.acquire(uri, handleOf(request), () -> scheduler.submit(request.priority, () -> {
+      final long sentAt = config.clock.now();
+      if (trace != null) trace.onQueueWait(sentAt - queuedAt);
+
+      final Slot slot = new Slot();
+      CallHandle handle = handleOf(request);
+      if (handle != null && handle.isFinished()) {
+        slot.release();
+        return;
+      }
+
+      // taken as the request leaves, the circuit may have opened while it waited, and waiting
+      // requests must not hold the few half open probes
+      final CircuitBreaker.Permit permit = circuits.tryAcquire(uri);
+      if (permit == null) {
+        slot.release();
+        failFast(request, callDelivery, errorListener);
+        return;
+      }
+
+      if (handle != null) {
+        // canceled requests may never get a transport callback
+        handle.onCancel(slot::release);
+        handle.onCancel(permit::onIgnored);
+      }
+
+      transport.execute(request, new TransportCallback() {
+        @Override
+        public void onResponse(TransportResponse response) {
+          slot.release();
+          long latency = config.clock.now() - sentAt;
+          if (trace != null) {
+            trace.onFirstByte(latency);
+            trace.onStatus(response.statusCode);
+          }
+          if (response.statusCode >= 500) permit.onFailure();
+          else permit.onSuccess(latency);
+          onRateLimitResponse(uri, response);
+          if (!response.isSuccessful() && response.statusCode != 304
+              && retry(request, retryPolicy, attempt, response.statusCode, response.headers.get("Retry-After"),
+              decoder, rawListener, errorListener)) {
+            response.discard();
+            return;
+          }
+
+          onTransportResponse(response, trace, callDelivery, decoder, rawListener, errorListener);
+        }
+
+        @Override
+        public void onFailure(Exception error) {
+          slot.release();
+          if (isCanceled(request)) {
+            // the call is over, nobody waits for a retry
+            permit.onIgnored();
+            return;
+          }
+          permit.onFailure();
+          Log.e(TAG, error.getMessage(), error);
+          if (retry(request, retryPolicy, attempt, -1, null, decoder, rawListener, errorListener)) return;
+
+          callDelivery.execute(() -> errorListener.onError(-1, "no-network-response"));
+        }
+      });
+    }, () -> {
+      Log.e(TAG, "Too many requests, rejecting " + request.url);
+      callDelivery.execute(() -> errorListener.onError(Constants.ERROR_REJECTED, "rejected-overloaded"));
+    }), () -> {
+      Log.e(TAG, "Too many requests waiting for quota, rejecting " + request.url);
+      callDelivery.execute(() -> errorListener.onError(Constants.ERROR_RATE_LIMITED, "rejected-rate-limited"));
+    });
+  }
+
+  private void failFast(final TransportRequest request, final Executor callDelivery, final ErrorListener errorListener) {
+    Log.d(TAG, "Circuit open, failing fast " + request.url);
+    callDelivery.execute(() -> errorListener.onError(Constants.ERROR_CIRCUIT_OPEN, "circuit-open"));
   }
 
-  private RequestQueue getRequestQueue() {
-    if (requestQueue == null) {
-      requestQueue = Volley.newRequestQueue(this.context);
+  private void onRateLimitResponse(final String uri, final TransportResponse response) {
+    if (response.statusCode == 429) {
+      String retryAfter = response.headers.get("Retry-After");
+      long delay = retryAfter != null ? RetryPolicy.parseRetryAfter(retryAfter) : -1;
+      Log.d(TAG, "Rate limited by the api on " + uri + (delay >= 0 ? ", pausing it " + delay + "ms" : ""));
+      rateLimiter.onRateLimited(uri, delay);
+    } else if (response.isSuccessful()) {
+      rateLimiter.onSuccess(uri);
     }
-    return requestQueue;
   }
 
-  private Response.ErrorListener onError(final ErrorListener listener) {
-    return error -> {
-      Log.e(TAG, error.getMessage(), error);
+  private void onCacheHit(final CallHandle handle) {
+    metrics.onCacheHit();
+    if (handle != null && handle.getTrace() != null) handle.getTrace().onCacheHit();
+  }
+
+  /**
+   * @return executor delivering the results of the call, the default one if the call has none
+   */
+  private Executor deliveryOf(final Object tag) {
+    Executor executor = tag instanceof CallHandle ? ((CallHandle) tag).getExecutor() : null;
+    return executor != null ? executor : delivery;
+  }
+
+  private CircuitListener circuitListener(final CircuitListener listener) {
+    if (listener == null) return null;
+    return (uri, state) -> delivery.execute(() -> listener.onStateChanged(uri, state));
+  }
+
+  /**
+   * @return true if sending the request twice has the effect of sending it once
+   */
+  private static boolean isIdempotent(final TransportRequest request) {
+    return !"POST".equals(request.method)
+        || (request.headers != null && request.headers.containsKey(Constants.IDEMPOTENCY_KEY_HEADER));
+  }
+
+  /**
+   * @return true if the call of the request was canceled or its deadline expired
+   */
+  private static boolean isCanceled(final TransportRequest request) {
+    return request.tag instanceof CallHandle && ((CallHandle) request.tag).isFinished();
+  }
+
+  private static CallHandle handleOf(final TransportRequest request) {
+    return request.tag instanceof CallHandle ? (CallHandle) request.tag : null;
+  }
+
+  private static CallTrace traceOf(final TransportRequest request) {
+    return request.tag instanceof CallHandle ? ((CallHandle) request.tag).getTrace() : null;
+  }
+
+  private Priority priorityOf(final String uri, final CallHandle handle) {
+    if (config.authUri.equals(uri)) return Priority.IMMEDIATE; // every call waits for tokens
+    return handle != null ? handle.getPriority() : Priority.NORMAL;
+  }
 
-      String msg = "no-network-response";
-      int statusCode = -1;
+  /**
+   * @return true if a retry has been scheduled
+   */
+  private <T> boolean retry(final TransportRequest request, final RetryPolicy retryPolicy, final int attempt,
+                            final int statusCode, final String retryAfter, final ResponseDecoder<T> decoder,
+                            final RawListener<T> rawListener, final ErrorListener errorListener) {
 
-      if (error.networkResponse != null) {
-        msg = new String(error.networkResponse.data, Charset.forName("UTF-8"));
-        statusCode = error.networkResponse.statusCode;
+    if (!retryPolicy.shouldRetry(attempt, statusCode, isIdempotent(request))) return false;
+    if (!retryBudget.tryRetry()) {
+      Log.d(TAG, "Retry budget exhausted, not retrying " + request.url);
+      return false;
+    }
+
+    CallTrace trace = traceOf(request);
+    if (trace != null) trace.onRetry();
+
+    long delay = retryPolicy.delay(attempt, retryAfter);
+    Log.d(TAG, "Retrying " + request.url + " (" + statusCode + ") in " + delay + "ms, attempt " + (attempt + 1));
+
+    RETRY_EXECUTOR.schedule(() -> {
+      if (isCanceled(request)) return;
+      execute(request, retryPolicy, attempt + 1, decoder, rawListener, errorListener);
+    }, delay, TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  private <T> void onTransportResponse(final TransportResponse response, final CallTrace trace,
+                                       final Executor callDelivery, final ResponseDecoder<T> decoder, final RawListener<T> rawListener,
+                                       final ErrorListener errorListener) {
+
+    if (response.statusCode == 304) {
+      callDelivery.execute(() -> rawListener.onResponse(response.headers, null));
+      return;
+    }
+
+    if (config.maxResponseSize > 0 && response.contentLength > config.maxResponseSize) {
+      Log.e(TAG, "Response of " + response.contentLength + " bytes exceeds the max response size.");
+      callDelivery.execute(() -> errorListener.onError(-1, "response-too-large"));
+      return;
+    }
+
+    boolean compressed = Constants.GZIP.equalsIgnoreCase(response.headers.get("Content-Encoding"));
+    LimitedInputStream wire = compressed ? new LimitedInputStream(response.body, 0) : null;
+
+    try {
+      // decompressed while decoding, the size limit applies to the decompressed bytes
+      LimitedInputStream in = new LimitedInputStream(compressed ? new GZIPInputStream(wire) : response.body,
+          config.maxResponseSize);
+      long contentLength = compressed ? -1 : response.contentLength;
+
+      if (!response.isSuccessful()) {
+        String responseBody = new String(TransportResponse.read(in, contentLength, BUFFER_POOL), UTF_8);
+        if (trace != null) trace.onReceived(compressed ? wire.getCount() : in.getCount());
+        Log.e(TAG, "Error response " + response.statusCode + ": " + responseBody);
+        callDelivery.execute(() -> errorListener.onError(response.statusCode, responseBody));
+        return;
       }
 
-      listener.onError(statusCode, msg);
-    };
+      T decoded = decoder.decode(in, contentLength);
+      if (compressed) compressionStats.onResponse(in.getCount(), wire.getCount());
+      if (trace != null) trace.onReceived(compressed ? wire.getCount() : in.getCount());
+      callDelivery.execute(() -> rawListener.onResponse(response.headers, decoded));
+    } catch (LimitedInputStream.ResponseTooLargeException e) {
+      Log.e(TAG, e.getMessage(), e);
+      callDelivery.execute(() -> errorListener.onError(-1, "response-too-large"));
+    } catch (IOException | IllegalStateException e) {
+      Log.e(TAG, "Cannot read response.", e);
+      callDelivery.execute(() -> errorListener.onError(-1, "Cannot read response. " + e.getMessage()));
+    } catch (JSONException e) {
+      Log.e(TAG, "Cannot parse json response.", e);
+      callDelivery.execute(() -> errorListener.onError(-1, "Cannot parse json response. " + e.getMessage()));
+    } catch (RuntimeException e) {
+      // thrown by custom decoders, like a NumberFormatException, it would kill the network thread
+      Log.e(TAG, "Cannot decode response.", e);
+      callDelivery.execute(() -> errorListener.onError(-1, "Cannot decode response. " + e));
+    }
+  }
+
+  private JSONObject decodeJson(final InputStream in, final long contentLength) throws IOException, JSONException {
+    return new JSONObject(new String(TransportResponse.read(in, contentLength, BUFFER_POOL), UTF_8));
+  }
+
+  /**
+   * @return gzip compressed bytes, or null if they cannot be compressed
+   */
+  private static byte[] gzip(final byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+    try {
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(bytes);
+      gzip.close();
+      return out.toByteArray();
+    } catch (IOException e) {
+      Log.e(TAG, "Cannot compress request body.", e);
+      return null;
+    }
+  }
+
+  private static String methodName(final int method) {
+    switch (method) {
+      case Request.Method.GET: return "GET";
+      case Request.Method.PUT: return "PUT";
+      case Request.Method.DELETE: return "DELETE";
+      case Request.Method.HEAD: return "HEAD";
+      case Request.Method.PATCH: return "PATCH";
+      default: return "POST";
+    }
+  }
+
+  /**
+   * @param response decoded response, or null if not modified
+   */
+  private interface RawListener<T> {
+
+    void onResponse(Map<String, String> headers, T response);
+
+  }
+
+  /**
+   * Scheduler slot of a request in flight, released once.
+   */
+  private class Slot {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    void release() {
+      if (released.compareAndSet(false, true)) scheduler.release();
+    }
+
+  }
+
+  private static class Waiter {
+
+    final RawListener<JSONObject> rawListener;
+    final ErrorListener errorListener;
+    final Executor executor;
+
+    Waiter(RawListener<JSONObject> rawListener, ErrorListener errorListener, Executor executor) {
+      this.rawListener = rawListener;
+      this.errorListener = errorListener;
+      this.executor = executor;
+    }
+
+  }
+
+  private interface ResponseDecoder<T> {
+
+    T decode(InputStream in, long contentLength) throws IOException, JSONException;
+
   }
 
 }
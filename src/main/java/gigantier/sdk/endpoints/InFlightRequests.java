@@ -0,0 +1,40 @@
+package gigantier.sdk.endpoints;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks requests in flight by key, so identical requests issued meanwhile join the pending one
+ * instead of hitting the network again.
+ */
+class InFlightRequests<L> {
+
+  private final Map<String, List<L>> pending = new HashMap<>();
+
+  /**
+   * @return true if the caller must send the request, false if it joined a pending one
+   */
+  synchronized boolean add(final String key, final L listener) {
+    List<L> listeners = pending.get(key);
+    if (listeners != null) {
+      listeners.add(listener);
+      return false;
+    }
+
+    listeners = new ArrayList<>();
+    listeners.add(listener);
+    pending.put(key, listeners);
+    return true;
+  }
+
+  /**
+   * @return listeners waiting for the request, which is no longer in flight
+   */
+  synchronized List<L> complete(final String key) {
+    List<L> listeners = pending.remove(key);
+    return listeners != null ? listeners : new ArrayList<>();
+  }
+
+}
@@ -0,0 +1,95 @@
+package gigantier.sdk.endpoints;
+
+import android.util.JsonWriter;
+
+import com.android.volley.toolbox.ByteArrayPool;
+import com.android.volley.toolbox.PoolingByteArrayOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Request body serializer, streaming the json straight from the body map into pooled buffers.
+ * Nested maps, collections, arrays and org.json values are written as json structures.
+ */
+public class JsonBody {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * @param pool buffer pool, or null
+   * @return utf-8 json bytes of the body, an empty object if null
+   * @throws IllegalArgumentException if the body has a NaN or infinite number
+   */
+  public static byte[] write(final Map<String, ?> body, final ByteArrayPool pool) throws IOException {
+    ByteArrayOutputStream out = pool != null ? new PoolingByteArrayOutputStream(pool, 256) : new ByteArrayOutputStream(256);
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, UTF_8));
+    try {
+      if (body != null) {
+        writeValue(writer, body);
+      } else {
+        writer.beginObject();
+        writer.endObject();
+      }
+      writer.flush();
+      return out.toByteArray();
+    } finally {
+      // not the writer, whose close would hide a write error behind an incomplete document one
+      out.close();
+    }
+  }
+
+  public static void writeValue(final JsonWriter writer, final Object value) throws IOException {
+    if (value == null || value == JSONObject.NULL) {
+      writer.nullValue();
+    } else if (value instanceof String) {
+      writer.value((String) value);
+    } else if (value instanceof Boolean) {
+      writer.value((Boolean) value);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      writer.value(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writer.value((Number) value);
+    } else if (value instanceof Map) {
+      writer.beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        writer.name(String.valueOf(entry.getKey()));
+        writeValue(writer, entry.getValue());
+      }
+      writer.endObject();
+    } else if (value instanceof Iterable) {
+      writer.beginArray();
+      for (Object item : (Iterable<?>) value) writeValue(writer, item);
+      writer.endArray();
+    } else if (value.getClass().isArray()) {
+      writer.beginArray();
+      for (int i = 0, length = Array.getLength(value); i < length; i++) writeValue(writer, Array.get(value, i));
+      writer.endArray();
+    } else if (value instanceof JSONObject) {
+      JSONObject object = (JSONObject) value;
+      writer.beginObject();
+      for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+        String key = keys.next();
+        writer.name(key);
+        writeValue(writer, object.opt(key));
+      }
+      writer.endObject();
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      writer.beginArray();
+      for (int i = 0; i < array.length(); i++) writeValue(writer, array.opt(i));
+      writer.endArray();
+    } else {
+      writer.value(value.toString());
+    }
+  }
+
+}
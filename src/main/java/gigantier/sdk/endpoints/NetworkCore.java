@@ -0,0 +1,147 @@
+package gigantier.sdk.endpoints;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import gigantier.sdk.transport.Transport;
+import gigantier.sdk.transport.VolleyTransport;
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Network resources shared by every client: transport with its threads and connections, disk
+ * response cache and delivery executor. Built from the application context, so no activity is
+ * leaked. Clients use the default core unless given one.
+ */
+public class NetworkCore {
+
+  private static NetworkCore defaultCore;
+
+  private final Context context;
+  private final Transport transport;
+  private final Executor deliveryExecutor;
+  private final long diskCacheSize;
+
+  private DiskResponseCache diskCache;
+  private ExecutorService diskExecutor;
+
+  private NetworkCore(Builder builder) {
+    this.context = builder.context;
+    this.transport = builder.transport != null ? builder.transport : new VolleyTransport(builder.threads);
+    this.deliveryExecutor = builder.deliveryExecutor != null ? builder.deliveryExecutor
+        : new Handler(Looper.getMainLooper())::post;
+    this.diskCacheSize = builder.diskCacheSize;
+  }
+
+  /**
+   * @return core shared by clients created without one, built with the default settings
+   */
+  public static synchronized NetworkCore getDefault(Context context) {
+    if (defaultCore == null) defaultCore = new Builder(context).build();
+    return defaultCore;
+  }
+
+  /**
+   * Set the core shared by clients created without one. Must be called before creating them.
+   */
+  public static synchronized void setDefault(NetworkCore core) {
+    defaultCore = core;
+  }
+
+  public Context getContext() {
+    return context;
+  }
+
+  public Transport getTransport() {
+    return transport;
+  }
+
+  /**
+   * @return executor delivering call results to listeners
+   */
+  public Executor getDeliveryExecutor() {
+    return deliveryExecutor;
+  }
+
+  /**
+   * @return true if the disk response cache is enabled, without creating it
+   */
+  public boolean hasDiskCache() {
+    return diskCacheSize > 0;
+  }
+
+  /**
+   * @return disk response cache, created on first use, or null if disabled. Resolves the cache
+   * dir, call it off the main thread
+   */
+  public synchronized DiskResponseCache getDiskCache() {
+    if (diskCache == null && diskCacheSize > 0) {
+      diskCache = new DiskResponseCache(new File(context.getCacheDir(), Constants.DISK_CACHE_DIR), diskCacheSize);
+    }
+    return diskCache;
+  }
+
+  /**
+   * @return single thread executor for disk cache I/O
+   */
+  public synchronized ExecutorService getDiskExecutor() {
+    if (diskExecutor == null) diskExecutor = Executors.newSingleThreadExecutor();
+    return diskExecutor;
+  }
+
+  public static class Builder {
+
+    private final Context context;
+    private int threads = Constants.NETWORK_THREADS;
+    private long diskCacheSize = Constants.DISK_CACHE_SIZE;
+    private Executor deliveryExecutor;
+    private Transport transport;
+
+    public Builder(Context context) {
+      this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+    }
+
+    /**
+     * @param threads network threads of the default transport
+     */
+    public Builder threads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * @param diskCacheSize max size of the disk response cache in bytes, 0 to disable it
+     */
+    public Builder diskCacheSize(long diskCacheSize) {
+      this.diskCacheSize = diskCacheSize;
+      return this;
+    }
+
+    /**
+     * @param deliveryExecutor executor delivering call results, main thread by default
+     */
+    public Builder deliveryExecutor(Executor deliveryExecutor) {
+      this.deliveryExecutor = deliveryExecutor;
+      return this;
+    }
+
+    /**
+     * @param transport transport shared by the clients, volley by default
+     */
+    public Builder transport(Transport transport) {
+      this.transport = transport;
+      return this;
+    }
+
+    public NetworkCore build() {
+      return new NetworkCore(this);
+    }
+
+  }
+
+}
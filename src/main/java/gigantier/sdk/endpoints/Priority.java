@@ -0,0 +1,13 @@
+package gigantier.sdk.endpoints;
+
+/**
+ * Call priorities, highest first.
+ */
+public enum Priority {
+
+  IMMEDIATE, // the user is waiting for it
+  NORMAL,
+  BACKGROUND, // sync jobs
+  PREFETCH // may never be needed
+
+}
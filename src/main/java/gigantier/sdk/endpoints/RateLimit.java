@@ -0,0 +1,20 @@
+package gigantier.sdk.endpoints;
+
+/**
+ * Token bucket limit. Requests are sent at most at the given rate, after being idle up to burst
+ * requests are sent at once.
+ */
+public class RateLimit {
+
+  public double rate; // requests per second
+  public int burst = 1;
+
+  public RateLimit() {
+  }
+
+  public RateLimit(double rate, int burst) {
+    this.rate = rate;
+    this.burst = burst;
+  }
+
+}
@@ -0,0 +1,274 @@
+package gigantier.sdk.endpoints;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import gigantier.sdk.utils.Clock;
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Client side rate limiting, with an optional global token bucket and one per limited endpoint.
+ * Requests over the quota wait in order, in a queue of at most maxWaiting requests, until their
+ * buckets have a token or their call is canceled. Buckets follow the server: a 429 halves the
+ * rate of the limit governing the endpoint and pauses the endpoint for its Retry-After, then the
+ * rate recovers a little with every success, so the sending rate settles below the server quota
+ * instead of oscillating.
+ */
+class RateLimiter {
+
+  private static final double MIN_RATE_FRACTION = 0.1;
+  private static final double RECOVERY_FRACTION = 0.05;
+
+  private final Bucket global;
+  private final Map<String, RateLimit> limits;
+  private final int maxWaiting;
+  private final ScheduledExecutorService scheduler;
+  private final Clock clock;
+  private final Map<String, Bucket> buckets = new HashMap<>();
+  private final List<Waiter> waiting = new ArrayList<>();
+  private long drainAt = Long.MAX_VALUE;
+
+  /**
+   * @param global limit of all the requests, or null for none
+   * @param limits uri -> endpoint limit
+   * @param maxWaiting max requests waiting for quota
+   * @param scheduler runs the waiting requests once they get quota
+   * @param clock time source of the buckets
+   */
+  RateLimiter(RateLimit global, Map<String, RateLimit> limits, int maxWaiting, ScheduledExecutorService scheduler,
+              Clock clock) {
+    this.clock = clock;
+    this.global = global != null ? new Bucket(global, now()) : null;
+    this.limits = limits;
+    this.maxWaiting = maxWaiting;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * @param handle handle of the call, whose cancel or deadline gives its place up, or null
+   * @param start sends the request, once it gets quota
+   * @param reject called if too many requests are waiting already
+   */
+  void acquire(final String uri, final CallHandle handle, final Runnable start, final Runnable reject) {
+    boolean run = false;
+    boolean rejected = false;
+    Waiter waiter = null;
+
+    synchronized (this) {
+      long now = now();
+      Bucket bucket = bucketOf(uri, now);
+      if (!isQueued(bucket) && tryTake(bucket, now)) {
+        run = true;
+      } else if (waiting.size() < maxWaiting) {
+        waiter = new Waiter(bucket, start);
+        waiting.add(waiter);
+        scheduleDrain(now);
+      } else {
+        rejected = true;
+      }
+    }
+
+    if (rejected) reject.run();
+    if (run) start.run();
+    if (waiter != null && handle != null) {
+      final Waiter queued = waiter;
+      handle.onCancel(() -> remove(queued));
+    }
+  }
+
+  /**
+   * The api answered 429. Pauses the endpoint for retryAfter millis, or a default pause when
+   * there is no limit to slow down, and halves the rate of its limit.
+   *
+   * @param retryAfter millis to wait, or -1 if unknown
+   */
+  synchronized void onRateLimited(final String uri, final long retryAfter) {
+    long now = now();
+    Bucket bucket = bucketOf(uri, now);
+    if (bucket == null) {
+      bucket = new Bucket(null, now);
+      buckets.put(uri, bucket);
+    }
+
+    Bucket limit = bucket.limited || global == null ? bucket : global;
+    limit.slowDown(now);
+
+    long pause = retryAfter >= 0 ? Math.min(retryAfter, Constants.RATE_LIMIT_MAX_PAUSE)
+        : (limit.limited ? 0 : Constants.RATE_LIMIT_PAUSE);
+    bucket.pausedUntil = Math.max(bucket.pausedUntil, now + pause);
+  }
+
+  /**
+   * The api answered a request, raise the rates lowered by previous 429 responses.
+   */
+  synchronized void onSuccess(final String uri) {
+    Bucket bucket = buckets.get(uri);
+    if (bucket != null) bucket.speedUp();
+    if (global != null) global.speedUp();
+  }
+
+  private synchronized void remove(final Waiter waiter) {
+    waiting.remove(waiter);
+  }
+
+  private void drain() {
+    List<Runnable> ready = new ArrayList<>();
+
+    synchronized (this) {
+      drainAt = Long.MAX_VALUE;
+      long now = now();
+
+      // requests of an endpoint keep their order, the others may go ahead of them
+      Set<Bucket> blocked = new HashSet<>();
+      for (Iterator<Waiter> iterator = waiting.iterator(); iterator.hasNext(); ) {
+        Waiter waiter = iterator.next();
+        if (waiter.bucket != null && blocked.contains(waiter.bucket)) continue;
+
+        if (tryTake(waiter.bucket, now)) {
+          iterator.remove();
+          ready.add(waiter.start);
+        } else if (global != null && !global.isAvailable(now)) {
+          break;
+        } else {
+          blocked.add(waiter.bucket);
+        }
+      }
+
+      if (!waiting.isEmpty()) scheduleDrain(now);
+    }
+
+    for (Runnable start : ready) start.run();
+  }
+
+  private void scheduleDrain(final long now) {
+    long wait = Long.MAX_VALUE;
+    for (Waiter waiter : waiting) wait = Math.min(wait, waitTime(waiter.bucket, now));
+    wait = Math.max(1, wait);
+
+    if (now + wait >= drainAt) return;
+    drainAt = now + wait;
+    scheduler.schedule(this::drain, wait, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return bucket of the endpoint, or null if not limited nor paused
+   */
+  private Bucket bucketOf(final String uri, final long now) {
+    Bucket bucket = buckets.get(uri);
+    if (bucket == null && limits.containsKey(uri)) {
+      bucket = new Bucket(limits.get(uri), now);
+      buckets.put(uri, bucket);
+    } else if (bucket != null && !bucket.limited && bucket.pausedUntil <= now) {
+      buckets.remove(uri);
+      bucket = null;
+    }
+    return bucket;
+  }
+
+  /**
+   * @return true if a request waiting already must go first
+   */
+  private boolean isQueued(final Bucket bucket) {
+    if (global != null) return !waiting.isEmpty();
+    if (bucket == null) return false;
+
+    for (Waiter waiter : waiting) {
+      if (waiter.bucket == bucket) return true;
+    }
+    return false;
+  }
+
+  private boolean tryTake(final Bucket bucket, final long now) {
+    if (global != null && !global.isAvailable(now)) return false;
+    if (bucket != null && !bucket.isAvailable(now)) return false;
+
+    if (global != null) global.take();
+    if (bucket != null) bucket.take();
+    return true;
+  }
+
+  private long waitTime(final Bucket bucket, final long now) {
+    long wait = global != null ? global.waitTime(now) : 0;
+    return bucket != null ? Math.max(wait, bucket.waitTime(now)) : wait;
+  }
+
+  private long now() {
+    return clock.now();
+  }
+
+  private static class Bucket {
+
+    final boolean limited;
+    final double maxRate; // per milli
+    final double burst;
+    double rate;
+    double tokens;
+    long refilledAt;
+    long pausedUntil;
+
+    /**
+     * @param limit bucket limit, or null for an unlimited bucket that can only be paused
+     */
+    Bucket(RateLimit limit, long now) {
+      this.limited = limit != null && limit.rate > 0;
+      this.maxRate = limited ? limit.rate / 1000 : 0;
+      this.burst = limited ? Math.max(1, limit.burst) : 0;
+      this.rate = maxRate;
+      this.tokens = burst;
+      this.refilledAt = now;
+    }
+
+    boolean isAvailable(long now) {
+      refill(now);
+      return now >= pausedUntil && (!limited || tokens >= 1);
+    }
+
+    void take() {
+      if (limited) tokens--;
+    }
+
+    long waitTime(long now) {
+      refill(now);
+      long wait = Math.max(0, pausedUntil - now);
+      if (limited && tokens < 1) wait = Math.max(wait, (long) Math.ceil((1 - tokens) / rate));
+      return wait;
+    }
+
+    void slowDown(long now) {
+      if (!limited) return;
+      refill(now);
+      rate = Math.max(maxRate * MIN_RATE_FRACTION, rate / 2);
+      tokens = Math.min(tokens, 0);
+    }
+
+    void speedUp() {
+      if (limited && rate < maxRate) rate = Math.min(maxRate, rate + maxRate * RECOVERY_FRACTION);
+    }
+
+    private void refill(long now) {
+      if (limited && now > refilledAt) tokens = Math.min(burst, tokens + (now - refilledAt) * rate);
+      refilledAt = Math.max(refilledAt, now);
+    }
+
+  }
+
+  private static class Waiter {
+
+    final Bucket bucket;
+    final Runnable start;
+
+    Waiter(Bucket bucket, Runnable start) {
+      this.bucket = bucket;
+      this.start = start;
+    }
+
+  }
+
+}
@@ -0,0 +1,62 @@
+package gigantier.sdk.endpoints;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds canonical keys identifying a request, independent of body key order. Keys of requests
+ * made with the app token ignore it, as it is the same for every user; keys of requests made with
+ * the user token keep it, so requests of different users never share a key.
+ */
+public class RequestKey {
+
+  private static final String ACCESS_TOKEN = "access_token";
+
+  private RequestKey() {
+  }
+
+  /**
+   * @param authenticated true if made with the user token, false for the app token
+   */
+  public static String of(final int method, final String uri, final boolean authenticated,
+                          final Map<String, Object> body) {
+    StringBuilder key = new StringBuilder().append(method).append(' ').append(uri).append(' ')
+        .append(authenticated ? "user " : "app ");
+    appendMap(key, body, !authenticated);
+    return key.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void appendValue(final StringBuilder key, final Object value) {
+    if (value instanceof Map) {
+      appendMap(key, (Map<String, Object>) value, false);
+    } else if (value instanceof Collection) {
+      key.append('[');
+      for (Object item : (Collection<Object>) value) {
+        appendValue(key, item);
+        key.append(',');
+      }
+      key.append(']');
+    } else if (value instanceof String) {
+      key.append('"').append(((String) value).replace("\"", "\\\"")).append('"');
+    } else {
+      key.append(value);
+    }
+  }
+
+  private static void appendMap(final StringBuilder key, final Map<String, Object> map, final boolean skipToken) {
+    key.append('{');
+    if (map != null) {
+      for (Map.Entry<String, Object> entry : new TreeMap<>(map).entrySet()) {
+        if (skipToken && ACCESS_TOKEN.equals(entry.getKey())) continue;
+        appendValue(key, entry.getKey());
+        key.append(':');
+        appendValue(key, entry.getValue());
+        key.append(',');
+      }
+    }
+    key.append('}');
+  }
+
+}
@@ -0,0 +1,110 @@
+package gigantier.sdk.endpoints;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Admission control for requests. At most maxInFlight requests are sent at a time, the others wait
+ * by priority in a queue of at most maxQueued requests. When the queue is full the new request
+ * is rejected or, with dropLowest, the lowest priority one is dropped to make room if it has a
+ * lower priority than the new one.
+ */
+class RequestScheduler {
+
+  private final int maxInFlight;
+  private final int maxQueued;
+  private final boolean dropLowest;
+  private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+  private int inFlight;
+  private long sequence;
+
+  /**
+   * @param maxInFlight max requests in flight, 0 for no limit
+   * @param maxQueued max requests waiting
+   * @param dropLowest drop the lowest priority request waiting instead of rejecting the new one
+   */
+  RequestScheduler(int maxInFlight, int maxQueued, boolean dropLowest) {
+    this.maxInFlight = maxInFlight;
+    this.maxQueued = maxQueued;
+    this.dropLowest = dropLowest;
+  }
+
+  /**
+   * @param start sends the request, once admitted
+   * @param reject called if the request is rejected or dropped
+   */
+  void submit(final Priority priority, final Runnable start, final Runnable reject) {
+    Runnable run = null;
+    Runnable dropped = null;
+    boolean rejected = false;
+
+    synchronized (this) {
+      if (maxInFlight <= 0 || inFlight < maxInFlight) {
+        inFlight++;
+        run = start;
+      } else if (queue.size() < maxQueued) {
+        queue.add(new Entry(priority, sequence++, start, reject));
+      } else {
+        Entry lowest = dropLowest ? lowest() : null;
+        if (lowest != null && lowest.priority.compareTo(priority) > 0) {
+          queue.remove(lowest);
+          dropped = lowest.reject;
+          queue.add(new Entry(priority, sequence++, start, reject));
+        } else {
+          rejected = true;
+        }
+      }
+    }
+
+    if (dropped != null) dropped.run();
+    if (rejected) reject.run();
+    if (run != null) run.run();
+  }
+
+  /**
+   * A request in flight finished, start the next one waiting.
+   */
+  void release() {
+    Entry next;
+    synchronized (this) {
+      next = queue.poll();
+      if (next == null) inFlight--;
+    }
+
+    if (next != null) next.start.run();
+  }
+
+  private Entry lowest() {
+    Entry lowest = null;
+    Iterator<Entry> iterator = queue.iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (lowest == null || entry.compareTo(lowest) > 0) lowest = entry;
+    }
+    return lowest;
+  }
+
+  private static class Entry implements Comparable<Entry> {
+
+    final Priority priority;
+    final long sequence;
+    final Runnable start;
+    final Runnable reject;
+
+    Entry(Priority priority, long sequence, Runnable start, Runnable reject) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.start = start;
+      this.reject = reject;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int byPriority = priority.compareTo(other.priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+
+  }
+
+}
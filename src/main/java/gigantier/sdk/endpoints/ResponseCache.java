@@ -0,0 +1,110 @@
+package gigantier.sdk.endpoints;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of api responses, bounded by size in bytes, with a ttl per entry.
+ */
+public class ResponseCache {
+
+  private final long maxSize;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long size;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @param maxSize max size of the cached responses in bytes
+   */
+  public ResponseCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return cached response body, or null if missing or expired
+   */
+  public synchronized String get(final String key) {
+    Entry entry = entries.get(key);
+
+    if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+      remove(key);
+      entry = null;
+    }
+
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+
+    hitCount++;
+    return entry.body;
+  }
+
+  public synchronized void put(final String key, final String body, final long ttl) {
+    Entry entry = new Entry(body, System.currentTimeMillis() + ttl, sizeOf(key, body));
+    if (entry.size > maxSize) return;
+
+    remove(key);
+    entries.put(key, entry);
+    size += entry.size;
+    trim();
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  public synchronized long size() {
+    return size;
+  }
+
+  public synchronized long hitCount() {
+    return hitCount;
+  }
+
+  public synchronized long missCount() {
+    return missCount;
+  }
+
+  public synchronized long evictionCount() {
+    return evictionCount;
+  }
+
+  private void remove(final String key) {
+    Entry previous = entries.remove(key);
+    if (previous != null) size -= previous.size;
+  }
+
+  private void trim() {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().getValue().size;
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  private static long sizeOf(final String key, final String body) {
+    return 2L * (key.length() + body.length());
+  }
+
+  private static class Entry {
+
+    final String body;
+    final long expiresAt;
+    final long size;
+
+    Entry(String body, long expiresAt, long size) {
+      this.body = body;
+      this.expiresAt = expiresAt;
+      this.size = size;
+    }
+
+  }
+
+}
@@ -0,0 +1,32 @@
+package gigantier.sdk.endpoints;
+
+/**
+ * Caps retries to a fraction of the requests, so retries cannot multiply the load during an
+ * outage. Every request deposits {@code ratio} tokens, up to {@code max}, every retry takes one.
+ */
+class RetryBudget {
+
+  private final float ratio;
+  private final float max;
+  private float tokens;
+
+  RetryBudget(float ratio, float max) {
+    this.ratio = ratio;
+    this.max = max;
+    this.tokens = max;
+  }
+
+  synchronized void onRequest() {
+    tokens = Math.min(max, tokens + ratio);
+  }
+
+  /**
+   * @return true if the retry is allowed
+   */
+  synchronized boolean tryRetry() {
+    if (tokens < 1) return false;
+    tokens--;
+    return true;
+  }
+
+}
@@ -0,0 +1,80 @@
+package gigantier.sdk.endpoints;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Retries of failed requests, with exponential backoff and jitter. Disabled by default, set
+ * maxRetries to enable it.
+ */
+public class RetryPolicy {
+
+  private static final Random RANDOM = new Random();
+
+  public int maxRetries = 0;
+  public long initialBackoff = Constants.RETRY_INITIAL_BACKOFF;
+  public long maxBackoff = Constants.RETRY_MAX_BACKOFF;
+  public float multiplier = 2f;
+  public float jitter = 0.5f; // fraction of the backoff randomized
+  public boolean retryNetworkErrors = true; // of posts, only when sent with an idempotency key
+  public Set<Integer> retryStatusCodes = new HashSet<>(Arrays.asList(408, 429, 502, 503, 504));
+  public boolean honorRetryAfter = true;
+  public boolean idempotencyKey = false; // send an idempotency key header, the same on every attempt
+
+  /**
+   * Network errors, 502 and 504 are ambiguous, the api may have processed the request, so they are
+   * only retried when repeating it is safe.
+   *
+   * @param attempt retries done so far
+   * @param statusCode response status code, or -1 for network errors
+   * @param idempotent true if the request can be repeated, like a post with an idempotency key
+   */
+  public boolean shouldRetry(int attempt, int statusCode, boolean idempotent) {
+    if (attempt >= maxRetries) return false;
+    if (isAmbiguous(statusCode) && !idempotent) return false;
+    return statusCode == -1 ? retryNetworkErrors : retryStatusCodes.contains(statusCode);
+  }
+
+  private static boolean isAmbiguous(int statusCode) {
+    return statusCode == -1 || statusCode == 502 || statusCode == 504;
+  }
+
+  /**
+   * @param attempt retries done so far
+   * @param retryAfter Retry-After header value, or null
+   * @return millis to wait before the next attempt
+   */
+  public long delay(int attempt, String retryAfter) {
+    if (honorRetryAfter && retryAfter != null) {
+      long serverDelay = parseRetryAfter(retryAfter);
+      if (serverDelay >= 0) return Math.min(serverDelay, maxBackoff);
+    }
+
+    double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt));
+    return (long) (backoff * (1 - jitter * RANDOM.nextDouble()));
+  }
+
+  /**
+   * @return delay in millis, or -1 if the value cannot be parsed
+   */
+  static long parseRetryAfter(String retryAfter) {
+    try {
+      return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+    } catch (NumberFormatException e) {
+      try {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        return Math.max(0, format.parse(retryAfter.trim()).getTime() - System.currentTimeMillis());
+      } catch (ParseException dateException) {
+        return -1;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,14 @@
+package gigantier.sdk.listeners;
+
+import java.util.List;
+
+import gigantier.sdk.batch.CallResult;
+
+public interface BatchListener {
+
+  /**
+   * @param results one result per call, in the same order as the calls
+   */
+  void onComplete(List<CallResult> results);
+
+}
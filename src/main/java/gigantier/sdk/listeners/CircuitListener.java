@@ -0,0 +1,12 @@
+package gigantier.sdk.listeners;
+
+import gigantier.sdk.circuit.CircuitState;
+
+public interface CircuitListener {
+
+  /**
+   * Called when the circuit of an endpoint changes state, on the delivery thread.
+   */
+  void onStateChanged(String uri, CircuitState state);
+
+}
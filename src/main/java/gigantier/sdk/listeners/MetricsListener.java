@@ -0,0 +1,12 @@
+package gigantier.sdk.listeners;
+
+import gigantier.sdk.metrics.CallMetrics;
+
+public interface MetricsListener {
+
+  /**
+   * Called once per finished call, on the delivery thread. Canceled calls are not reported.
+   */
+  void onCall(CallMetrics metrics);
+
+}
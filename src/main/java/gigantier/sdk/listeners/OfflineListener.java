@@ -0,0 +1,17 @@
+package gigantier.sdk.listeners;
+
+import org.json.JSONObject;
+
+import gigantier.sdk.offline.QueuedCall;
+
+public interface OfflineListener {
+
+  void onReplayed(QueuedCall call, JSONObject response);
+
+  /**
+   * Called when the api rejects a queued call, or the user token to send it cannot be renewed.
+   * The call is then dropped from the queue.
+   */
+  void onFailed(QueuedCall call, int code, String msg);
+
+}
@@ -0,0 +1,44 @@
+package gigantier.sdk.metrics;
+
+/**
+ * Measures of a finished call. Times are in millis, 0 when the call did not get that far.
+ */
+public class CallMetrics {
+
+  public final String uri;
+  public final int statusCode; // of the response on success, else the error code
+  public final long queueWait; // waiting for a request slot
+  public final long timeToFirstByte; // from sending the last request to its headers, to its whole body with volley
+  public final long latency; // whole call, token renewal included
+  public final long bytesSent;
+  public final long bytesReceived;
+  public final int retries;
+  public final boolean tokenRefreshed;
+  public final boolean cached;
+
+  public CallMetrics(String uri, int statusCode, long queueWait, long timeToFirstByte, long latency, long bytesSent,
+                     long bytesReceived, int retries, boolean tokenRefreshed, boolean cached) {
+    this.uri = uri;
+    this.statusCode = statusCode;
+    this.queueWait = queueWait;
+    this.timeToFirstByte = timeToFirstByte;
+    this.latency = latency;
+    this.bytesSent = bytesSent;
+    this.bytesReceived = bytesReceived;
+    this.retries = retries;
+    this.tokenRefreshed = tokenRefreshed;
+    this.cached = cached;
+  }
+
+  public boolean isSuccess() {
+    return statusCode >= 200 && statusCode < 300;
+  }
+
+  @Override
+  public String toString() {
+    return uri + " " + statusCode + " in " + latency + "ms (queue " + queueWait + "ms, ttfb " + timeToFirstByte
+        + "ms), " + bytesSent + "B out, " + bytesReceived + "B in, " + retries + " retries"
+        + (tokenRefreshed ? ", token refreshed" : "") + (cached ? ", cached" : "");
+  }
+
+}
@@ -0,0 +1,72 @@
+package gigantier.sdk.metrics;
+
+import android.os.SystemClock;
+
+/**
+ * Measures of a call in progress, recorded from the network and delivery threads.
+ */
+public class CallTrace {
+
+  private final String uri;
+  private final long startedAt = SystemClock.elapsedRealtime();
+  private long queueWait;
+  private long timeToFirstByte;
+  private long bytesSent;
+  private long bytesReceived;
+  private int retries;
+  private boolean tokenRefreshed;
+  private boolean cached;
+  private int statusCode = 200; // of the last response, cached responses count as 200
+
+  public CallTrace(String uri) {
+    this.uri = uri;
+  }
+
+  public synchronized void onQueueWait(final long millis) {
+    queueWait += millis;
+  }
+
+  public synchronized void onFirstByte(final long millis) {
+    timeToFirstByte = millis;
+  }
+
+  public synchronized void onStatus(final int statusCode) {
+    this.statusCode = statusCode;
+  }
+
+  public synchronized void onSent(final long bytes) {
+    bytesSent += bytes;
+  }
+
+  public synchronized void onReceived(final long bytes) {
+    bytesReceived += bytes;
+  }
+
+  public synchronized void onRetry() {
+    retries++;
+  }
+
+  public synchronized void onTokenRefresh() {
+    tokenRefreshed = true;
+  }
+
+  public synchronized void onCacheHit() {
+    cached = true;
+  }
+
+  /**
+   * Finish a call completed with a response, with the status of that response.
+   */
+  public synchronized CallMetrics finish() {
+    return finish(statusCode);
+  }
+
+  /**
+   * @param statusCode status or error code the call completed with
+   */
+  public synchronized CallMetrics finish(final int statusCode) {
+    return new CallMetrics(uri, statusCode, queueWait, timeToFirstByte, SystemClock.elapsedRealtime() - startedAt,
+        bytesSent, bytesReceived, retries, tokenRefreshed, cached);
+  }
+
+}
@@ -0,0 +1,54 @@
+package gigantier.sdk.metrics;
+
+/**
+ * Latency histogram with fixed buckets, so its memory does not grow with the calls recorded.
+ */
+public class LatencyHistogram {
+
+  private static final long[] BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+  private final long[] counts = new long[BOUNDS.length + 1];
+  private long count;
+  private long sum;
+  private long max;
+
+  public synchronized void record(final long millis) {
+    int bucket = 0;
+    while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) bucket++;
+
+    counts[bucket]++;
+    count++;
+    sum += millis;
+    if (millis > max) max = millis;
+  }
+
+  public synchronized long count() {
+    return count;
+  }
+
+  public synchronized long mean() {
+    return count > 0 ? sum / count : 0;
+  }
+
+  public synchronized long max() {
+    return max;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return upper bound of the bucket holding the percentile, or the max latency for the last bucket
+   */
+  public synchronized long percentile(final double percentile) {
+    if (count == 0) return 0;
+
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) return Math.min(BOUNDS[bucket], max);
+    }
+
+    return max;
+  }
+
+}
@@ -0,0 +1,100 @@
+package gigantier.sdk.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Aggregated call metrics: latency histograms per endpoint and sdk counters. The endpoints
+ * tracked are bounded, calls to further ones share the {@link #OTHER} histogram.
+ */
+public class Metrics {
+
+  public static final String OTHER = "*";
+
+  private final Map<String, LatencyHistogram> histograms = new HashMap<>();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong tokenRefreshes = new AtomicLong();
+  private final AtomicLong unauthorized = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong deduplicated = new AtomicLong();
+
+  public void record(final CallMetrics metrics) {
+    calls.incrementAndGet();
+    if (!metrics.isSuccess()) errors.incrementAndGet();
+    histogram(metrics.uri, true).record(metrics.latency);
+  }
+
+  public void onTokenRefresh() {
+    tokenRefreshes.incrementAndGet();
+  }
+
+  public void onUnauthorized() {
+    unauthorized.incrementAndGet();
+  }
+
+  public void onCacheHit() {
+    cacheHits.incrementAndGet();
+  }
+
+  public void onDeduplicated() {
+    deduplicated.incrementAndGet();
+  }
+
+  /**
+   * @return latency histogram of the endpoint, or null if no call to it has been recorded
+   */
+  public LatencyHistogram histogram(final String uri) {
+    return histogram(uri, false);
+  }
+
+  /**
+   * @return uris with a latency histogram
+   */
+  public synchronized List<String> endpoints() {
+    return new ArrayList<>(histograms.keySet());
+  }
+
+  public long calls() {
+    return calls.get();
+  }
+
+  public long errors() {
+    return errors.get();
+  }
+
+  public long tokenRefreshes() {
+    return tokenRefreshes.get();
+  }
+
+  public long unauthorized() {
+    return unauthorized.get();
+  }
+
+  public long cacheHits() {
+    return cacheHits.get();
+  }
+
+  public long deduplicated() {
+    return deduplicated.get();
+  }
+
+  private synchronized LatencyHistogram histogram(final String uri, final boolean create) {
+    LatencyHistogram histogram = histograms.get(uri);
+    if (histogram != null || !create) return histogram;
+
+    String key = histograms.size() < Constants.MAX_METRICS_ENDPOINTS ? uri : OTHER;
+    histogram = histograms.get(key);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      histograms.put(key, histogram);
+    }
+    return histogram;
+  }
+
+}
@@ -0,0 +1,41 @@
+package gigantier.sdk.offline;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * Runs an action each time the device gets connected.
+ */
+public class ConnectivityReceiver extends BroadcastReceiver {
+
+  private final Runnable onConnected;
+
+  public ConnectivityReceiver(Runnable onConnected) {
+    this.onConnected = onConnected;
+  }
+
+  public static IntentFilter filter() {
+    return new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+  }
+
+  /**
+   * @return true if there is an active network, or if it cannot be told
+   */
+  public static boolean isConnected(final Context context) {
+    ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    if (manager == null) return true;
+
+    NetworkInfo info = manager.getActiveNetworkInfo();
+    return info != null && info.isConnected();
+  }
+
+  @Override
+  public void onReceive(Context context, Intent intent) {
+    if (isConnected(context)) onConnected.run();
+  }
+
+}
@@ -0,0 +1,336 @@
+package gigantier.sdk.offline;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import gigantier.sdk.endpoints.JsonBody;
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.OfflineListener;
+import gigantier.sdk.listeners.ResponseListener;
+import gigantier.sdk.transport.TransportResponse;
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Durable queue of authenticated calls made while offline, one small json file per call. Calls
+ * are replayed in order with bounded parallelism and removed once the api has answered them, so
+ * delivery is at least once. Disk access runs on the given executor.
+ */
+public class OfflineQueue {
+
+  private static final String TAG = OfflineQueue.class.getName();
+  private static final String SUFFIX = ".json";
+
+  private final Context context;
+  private final Executor diskExecutor;
+  private final int parallelism;
+  private final OfflineListener listener;
+
+  private final List<QueuedCall> pending = new ArrayList<>();
+  private File dir;
+  private boolean loaded;
+  private long sequence;
+  private boolean replaying;
+  private boolean replayAgain;
+
+  /**
+   * @param context context whose files dir keeps the queue, resolved on the disk executor
+   * @param listener notified of replayed and rejected calls, or null
+   */
+  public OfflineQueue(Context context, Executor diskExecutor, int parallelism, OfflineListener listener) {
+    this.context = context;
+    this.diskExecutor = diskExecutor;
+    this.parallelism = parallelism;
+    this.listener = listener;
+  }
+
+  /**
+   * Queue a call. Its body is serialized at once, it must not be modified until replayed.
+   *
+   * @param requestBody call body, or null for an empty one
+   * @throws IllegalArgumentException if the body cannot be serialized, like a NaN number
+   */
+  public void add(final String uri, final Map<String, Object> requestBody) {
+    final String key = UUID.randomUUID().toString();
+    final long createdAt = System.currentTimeMillis();
+    final Map<String, Object> body = requestBody != null ? requestBody : new HashMap<>();
+
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("uri", uri);
+    entry.put("key", key);
+    entry.put("createdAt", createdAt);
+    entry.put("body", body);
+
+    final byte[] bytes;
+    try {
+      bytes = JsonBody.write(entry, null);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot serialize queued call to " + uri, e);
+    }
+
+    diskExecutor.execute(() -> {
+      load();
+      QueuedCall call;
+      synchronized (this) {
+        call = new QueuedCall(++sequence, uri, body, key, createdAt);
+      }
+
+      if (!write(call.id, bytes)) return;
+      synchronized (this) {
+        pending.add(call);
+      }
+    });
+  }
+
+  /**
+   * @return calls waiting to be replayed, 0 until the queue has been loaded
+   */
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  /**
+   * Drop every queued call.
+   */
+  public void clear() {
+    diskExecutor.execute(() -> {
+      load();
+      List<QueuedCall> calls;
+      synchronized (this) {
+        calls = new ArrayList<>(pending);
+        pending.clear();
+      }
+      for (QueuedCall call : calls) delete(call);
+    });
+  }
+
+  /**
+   * Replay the queued calls, resolving the token once for all of them. Stops at the first
+   * network error or transient failure, keeping the rest for the next replay.
+   */
+  public void replay(final Sender sender) {
+    diskExecutor.execute(() -> {
+      load();
+      final List<QueuedCall> calls;
+      synchronized (this) {
+        if (replaying) {
+          replayAgain = true;
+          return;
+        }
+        if (pending.isEmpty()) return;
+        replaying = true;
+        calls = new ArrayList<>(pending);
+      }
+
+      Log.d(TAG, "Replaying " + calls.size() + " queued calls");
+      sender.resolveToken(token -> new Replay(calls, token, sender).start(), (code, msg) -> {
+        Log.e(TAG, "Cannot resolve token to replay queued calls: " + code + " - " + msg);
+        // the user token cannot be renewed, like with a revoked refresh token, so no call ever will be sent
+        if (!isTransient(code)) for (QueuedCall call : calls) reject(call, code, msg);
+        onReplayFinished(sender);
+      });
+    });
+  }
+
+  private void onReplayFinished(final Sender sender) {
+    boolean again;
+    synchronized (this) {
+      replaying = false;
+      again = replayAgain;
+      replayAgain = false;
+    }
+    if (again) replay(sender);
+  }
+
+  private void reject(final QueuedCall call, final int code, final String msg) {
+    remove(call);
+    if (listener != null) listener.onFailed(call, code, msg);
+  }
+
+  private void remove(final QueuedCall call) {
+    synchronized (this) {
+      pending.remove(call);
+    }
+    diskExecutor.execute(() -> delete(call));
+  }
+
+  /**
+   * Load the queued calls left by a previous process, on the disk executor.
+   */
+  private void load() {
+    synchronized (this) {
+      if (loaded) return;
+      loaded = true;
+    }
+
+    dir = new File(context.getFilesDir(), Constants.OFFLINE_QUEUE_DIR);
+    String[] names = dir.list();
+    if (names == null) return;
+    Arrays.sort(names);
+
+    List<QueuedCall> calls = new ArrayList<>();
+    long maxId = 0;
+    for (String name : names) {
+      if (!name.endsWith(SUFFIX)) continue;
+
+      File file = new File(dir, name);
+      try {
+        long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        calls.add(read(id, file));
+        maxId = Math.max(maxId, id);
+      } catch (IOException | JSONException | NumberFormatException e) {
+        Log.e(TAG, "Dropping unreadable queued call " + name, e);
+        if (!file.delete()) Log.e(TAG, "Cannot delete " + name);
+      }
+    }
+
+    synchronized (this) {
+      pending.addAll(0, calls);
+      sequence = Math.max(sequence, maxId);
+    }
+  }
+
+  private static QueuedCall read(final long id, final File file) throws IOException, JSONException {
+    InputStream in = new FileInputStream(file);
+    try {
+      JSONObject json = new JSONObject(new String(TransportResponse.read(in, file.length(), null), "UTF-8"));
+      // null in calls queued by older versions
+      JSONObject body = json.optJSONObject("body");
+
+      Map<String, Object> bodyMap = new HashMap<>();
+      if (body != null) {
+        for (Iterator<String> keys = body.keys(); keys.hasNext(); ) {
+          String key = keys.next();
+          bodyMap.put(key, body.get(key));
+        }
+      }
+
+      return new QueuedCall(id, json.getString("uri"), bodyMap, json.getString("key"), json.getLong("createdAt"));
+    } finally {
+      in.close();
+    }
+  }
+
+  private boolean write(final long id, final byte[] bytes) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      Log.e(TAG, "Cannot create offline queue dir " + dir);
+      return false;
+    }
+
+    File tmp = new File(dir, fileName(id) + ".tmp");
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+      return tmp.renameTo(new File(dir, fileName(id)));
+    } catch (IOException e) {
+      Log.e(TAG, "Cannot write queued call " + id, e);
+      return false;
+    }
+  }
+
+  private void delete(final QueuedCall call) {
+    File file = new File(dir, fileName(call.id));
+    if (file.exists() && !file.delete()) Log.e(TAG, "Cannot delete queued call " + call.id);
+  }
+
+  private static String fileName(final long id) {
+    return String.format("%019d", id) + SUFFIX;
+  }
+
+  /**
+   * @return true if the call may succeed later, so it is kept in the queue. A 401 is not, the user
+   * token was already renewed and rejected again
+   */
+  private static boolean isTransient(final int code) {
+    return code < 0 || code == 408 || code == 429 || code >= 500;
+  }
+
+  public interface Sender {
+
+    void resolveToken(ResponseListener<String> responseListener, ErrorListener errorListener);
+
+    void send(QueuedCall call, String token, ResponseListener<JSONObject> responseListener,
+              ErrorListener errorListener);
+
+  }
+
+  private class Replay {
+
+    private final List<QueuedCall> calls;
+    private final String token;
+    private final Sender sender;
+    private int next;
+    private int inFlight;
+    private boolean stopped;
+    private boolean finished;
+
+    Replay(List<QueuedCall> calls, String token, Sender sender) {
+      this.calls = calls;
+      this.token = token;
+      this.sender = sender;
+    }
+
+    void start() {
+      for (int i = 0; i < parallelism; i++) dispatchNext();
+    }
+
+    private void dispatchNext() {
+      final QueuedCall call;
+      boolean finish = false;
+      synchronized (this) {
+        call = !stopped && next < calls.size() ? calls.get(next++) : null;
+        if (call != null) inFlight++;
+        else if (inFlight == 0 && !finished) finish = finished = true;
+      }
+
+      if (finish) {
+        onReplayFinished(sender);
+        return;
+      }
+      if (call == null) return;
+
+      sender.send(call, token, response -> {
+        remove(call);
+        if (listener != null) listener.onReplayed(call, response);
+        complete(false);
+      }, (code, msg) -> {
+        boolean keep = isTransient(code);
+        Log.e(TAG, "Queued call to " + call.uri + " failed: " + code + " - " + msg + (keep ? ", kept" : ""));
+        if (!keep) reject(call, code, msg);
+        complete(keep);
+      });
+    }
+
+    private void complete(final boolean stop) {
+      synchronized (this) {
+        inFlight--;
+        if (stop) stopped = true;
+      }
+      dispatchNext();
+    }
+
+  }
+
+}
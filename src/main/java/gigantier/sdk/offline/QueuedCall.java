@@ -0,0 +1,25 @@
+package gigantier.sdk.offline;
+
+import java.util.Map;
+
+/**
+ * Authenticated call waiting in the offline queue. Replays send the same idempotency key, so the
+ * api can drop a call delivered twice.
+ */
+public class QueuedCall {
+
+  public final long id;
+  public final String uri;
+  public final Map<String, Object> body;
+  public final String idempotencyKey;
+  public final long createdAt;
+
+  public QueuedCall(long id, String uri, Map<String, Object> body, String idempotencyKey, long createdAt) {
+    this.id = id;
+    this.uri = uri;
+    this.body = body;
+    this.idempotencyKey = idempotencyKey;
+    this.createdAt = createdAt;
+  }
+
+}
@@ -0,0 +1,158 @@
+package gigantier.sdk.paging;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import gigantier.sdk.listeners.ErrorListener;
+import gigantier.sdk.listeners.ResponseListener;
+
+/**
+ * Async cursor over a paginated list endpoint. Pages are delivered in order, while the consumer
+ * handles a page the following ones are prefetched, with at most {@code prefetch} pages ahead.
+ */
+public class PageCursor {
+
+  private final Fetcher fetcher;
+  private final String itemsKey;
+  private final int pageSize;
+  private final int prefetch;
+
+  private final Map<Integer, Page> pages = new HashMap<>();
+  private int nextPage;
+  private int lastPage = Integer.MAX_VALUE;
+  private boolean closed;
+
+  private ResponseListener<JSONObject> responseListener;
+  private ErrorListener errorListener;
+
+  /**
+   * @param fetcher fetches a page given its offset and limit
+   * @param itemsKey key of the items array in the page response, used to detect the last page
+   * @param pageSize items per page
+   * @param prefetch max pages fetched ahead of the one being consumed
+   */
+  public PageCursor(Fetcher fetcher, String itemsKey, int pageSize, int prefetch) {
+    this.fetcher = fetcher;
+    this.itemsKey = itemsKey;
+    this.pageSize = pageSize;
+    this.prefetch = Math.max(0, prefetch);
+  }
+
+  /**
+   * @return false once the last page has been delivered
+   */
+  public synchronized boolean hasNext() {
+    return !closed && nextPage <= lastPage;
+  }
+
+  /**
+   * Deliver the next page. Only one page can be requested at a time. If the page fails, calling
+   * next again retries it.
+   */
+  public void next(final ResponseListener<JSONObject> responseListener, final ErrorListener errorListener) {
+    synchronized (this) {
+      if (!hasNext()) throw new IllegalStateException("No more pages");
+      if (this.responseListener != null) throw new IllegalStateException("Page already requested");
+
+      this.responseListener = responseListener;
+      this.errorListener = errorListener;
+    }
+
+    fill();
+    deliver();
+  }
+
+  /**
+   * Stop fetching pages, pending ones are discarded.
+   */
+  public synchronized void close() {
+    closed = true;
+    pages.clear();
+    responseListener = null;
+    errorListener = null;
+  }
+
+  private void fill() {
+    int limit;
+    synchronized (this) {
+      limit = Math.min(nextPage + prefetch, lastPage);
+    }
+
+    for (int index = nextPage; index <= limit; index++) {
+      final int page = index;
+      synchronized (this) {
+        if (closed || pages.containsKey(page)) continue;
+        pages.put(page, new Page());
+      }
+
+      fetcher.fetch(page * pageSize, pageSize, response -> onPage(page, response, 0, null),
+          (code, msg) -> onPage(page, null, code, msg));
+    }
+  }
+
+  private void onPage(final int index, final JSONObject response, final int code, final String msg) {
+    synchronized (this) {
+      Page page = pages.get(index);
+      if (closed || page == null) return;
+
+      page.done = true;
+      page.response = response;
+      page.errorCode = code;
+      page.errorMessage = msg;
+
+      if (response != null && itemCount(response) < pageSize) lastPage = Math.min(lastPage, index);
+    }
+
+    deliver();
+  }
+
+  private void deliver() {
+    Page page;
+    ResponseListener<JSONObject> responseListener;
+    ErrorListener errorListener;
+
+    synchronized (this) {
+      page = pages.get(nextPage);
+      if (this.responseListener == null || page == null || !page.done) return;
+
+      responseListener = this.responseListener;
+      errorListener = this.errorListener;
+      this.responseListener = null;
+      this.errorListener = null;
+
+      pages.remove(nextPage);
+      if (page.response != null) nextPage++;
+    }
+
+    if (page.response != null) {
+      fill();
+      responseListener.onResponse(page.response);
+    } else {
+      errorListener.onError(page.errorCode, page.errorMessage);
+    }
+  }
+
+  private int itemCount(final JSONObject response) {
+    JSONArray items = response.optJSONArray(itemsKey);
+    return items != null ? items.length() : 0;
+  }
+
+  public interface Fetcher {
+
+    void fetch(int offset, int limit, ResponseListener<JSONObject> responseListener, ErrorListener errorListener);
+
+  }
+
+  private static class Page {
+
+    boolean done;
+    JSONObject response;
+    int errorCode;
+    String errorMessage;
+
+  }
+
+}
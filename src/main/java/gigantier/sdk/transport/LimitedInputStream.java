@@ -0,0 +1,64 @@
+package gigantier.sdk.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read, failing once more than a max number have been read.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+  private final long limit;
+  private long count;
+
+  /**
+   * @param limit max bytes to read, 0 for no limit
+   */
+  public LimitedInputStream(InputStream in, long limit) {
+    super(in);
+    this.limit = limit;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b != -1) count(1);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int read = super.read(buffer, offset, length);
+    if (read > 0) count(read);
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    count(skipped);
+    return skipped;
+  }
+
+  /**
+   * @return bytes read so far
+   */
+  public long getCount() {
+    return count;
+  }
+
+  private void count(long read) throws IOException {
+    count += read;
+    if (limit > 0 && count > limit) throw new ResponseTooLargeException(limit);
+  }
+
+  public static class ResponseTooLargeException extends IOException {
+
+    public ResponseTooLargeException(long limit) {
+      super("Response larger than " + limit + " bytes");
+    }
+
+  }
+
+}
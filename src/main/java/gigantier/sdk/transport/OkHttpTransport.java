@@ -0,0 +1,141 @@
+package gigantier.sdk.transport;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import gigantier.sdk.utils.Constants;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Transport based on OkHttp, with a connection pool and HTTP/2 multiplexing when the server
+ * supports it. Connections are kept alive between calls, saving TLS handshakes.
+ */
+public class OkHttpTransport implements Transport {
+
+  private final OkHttpClient client;
+  private final Map<String, OkHttpClient> clients = new HashMap<>();
+
+  public OkHttpTransport() {
+    this(Constants.MAX_IDLE_CONNECTIONS, Constants.KEEP_ALIVE);
+  }
+
+  /**
+   * @param maxIdleConnections max idle connections kept in the pool
+   * @param keepAlive millis an idle connection is kept in the pool
+   */
+  public OkHttpTransport(int maxIdleConnections, long keepAlive) {
+    this(maxIdleConnections, keepAlive, Constants.MAX_REQUESTS, Constants.MAX_REQUESTS_PER_HOST);
+  }
+
+  /**
+   * Every call goes to the api host, so OkHttp's default of 5 requests per host would queue the
+   * rest in its dispatcher, out of reach of the sdk priorities.
+   *
+   * @param maxIdleConnections max idle connections kept in the pool
+   * @param keepAlive millis an idle connection is kept in the pool
+   * @param maxRequests max requests executed at once
+   * @param maxRequestsPerHost max requests executed at once to a single host
+   */
+  public OkHttpTransport(int maxIdleConnections, long keepAlive, int maxRequests, int maxRequestsPerHost) {
+    this(new OkHttpClient.Builder()
+        .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.MILLISECONDS))
+        .dispatcher(dispatcher(maxRequests, maxRequestsPerHost))
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        // retries are left to the retry policy, which only repeats posts when it is safe
+        .retryOnConnectionFailure(false)
+        .build());
+  }
+
+  /**
+   * @param client preconfigured client, shared with the app if needed
+   */
+  public OkHttpTransport(OkHttpClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public void execute(final TransportRequest request, final TransportCallback callback) {
+    Request.Builder builder = new Request.Builder().url(request.url);
+    if (request.headers != null) {
+      for (Map.Entry<String, String> header : request.headers.entrySet()) builder.header(header.getKey(), header.getValue());
+    }
+
+    RequestBody body = request.body != null ? RequestBody.create(MediaType.parse(request.contentType), request.body) : null;
+    builder.method(request.method, body);
+    if (request.tag != null) builder.tag(request.tag);
+
+    clientFor(request).newCall(builder.build()).enqueue(new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        callback.onFailure(e);
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        ResponseBody responseBody = response.body();
+        try {
+          callback.onResponse(new TransportResponse(response.code(), toMap(response.headers()),
+              responseBody.byteStream(), responseBody.contentLength()));
+        } finally {
+          response.close();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void cancel(final Object tag) {
+    for (Call call : client.dispatcher().queuedCalls()) if (tag.equals(call.request().tag())) call.cancel();
+    for (Call call : client.dispatcher().runningCalls()) if (tag.equals(call.request().tag())) call.cancel();
+  }
+
+  /**
+   * @return client with the request timeouts, sharing the connection pool and dispatcher
+   */
+  private OkHttpClient clientFor(final TransportRequest request) {
+    int connectTimeout = request.connectTimeout > 0 ? request.connectTimeout : client.connectTimeoutMillis();
+    int readTimeout = request.readTimeout > 0 ? request.readTimeout : client.readTimeoutMillis();
+    if (connectTimeout == client.connectTimeoutMillis() && readTimeout == client.readTimeoutMillis()) return client;
+
+    String key = connectTimeout + "/" + readTimeout;
+    synchronized (clients) {
+      OkHttpClient timeoutClient = clients.get(key);
+      if (timeoutClient == null) {
+        timeoutClient = client.newBuilder()
+            .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+            .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+            .build();
+        clients.put(key, timeoutClient);
+      }
+      return timeoutClient;
+    }
+  }
+
+  private static Dispatcher dispatcher(final int maxRequests, final int maxRequestsPerHost) {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(maxRequests);
+    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    return dispatcher;
+  }
+
+  private static Map<String, String> toMap(final Headers headers) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < headers.size(); i++) map.put(headers.name(i), headers.value(i));
+    return map;
+  }
+
+}
@@ -0,0 +1,15 @@
+package gigantier.sdk.transport;
+
+/**
+ * Executes http requests for the gateway. Callbacks are invoked on a background thread.
+ */
+public interface Transport {
+
+  void execute(TransportRequest request, TransportCallback callback);
+
+  /**
+   * Cancel the requests with the given tag. Their callbacks may not be called.
+   */
+  void cancel(Object tag);
+
+}
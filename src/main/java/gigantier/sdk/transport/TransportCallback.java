@@ -0,0 +1,16 @@
+package gigantier.sdk.transport;
+
+public interface TransportCallback {
+
+  /**
+   * Http response received, whatever its status code. The response body is only readable
+   * during this call.
+   */
+  void onResponse(TransportResponse response);
+
+  /**
+   * No http response, because of a connection error, a timeout or a cancellation.
+   */
+  void onFailure(Exception error);
+
+}
@@ -0,0 +1,42 @@
+package gigantier.sdk.transport;
+
+import java.util.Map;
+
+import gigantier.sdk.endpoints.Priority;
+
+public class TransportRequest {
+
+  public final String method;
+  public final String url;
+  public final Map<String, String> headers;
+  public final byte[] body;
+  public final String contentType;
+  public final Object tag;
+  public final int connectTimeout;
+  public final int readTimeout;
+  public final Priority priority;
+
+  public TransportRequest(String method, String url, Map<String, String> headers, byte[] body, String contentType) {
+    this(method, url, headers, body, contentType, null, 0, 0, Priority.NORMAL);
+  }
+
+  /**
+   * @param tag to cancel the request, or null
+   * @param connectTimeout connect timeout in millis, 0 for the transport default
+   * @param readTimeout read timeout in millis, 0 for the transport default
+   * @param priority request priority, honored by transports with a prioritized queue
+   */
+  public TransportRequest(String method, String url, Map<String, String> headers, byte[] body, String contentType,
+                          Object tag, int connectTimeout, int readTimeout, Priority priority) {
+    this.method = method;
+    this.url = url;
+    this.headers = headers;
+    this.body = body;
+    this.contentType = contentType;
+    this.tag = tag;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.priority = priority;
+  }
+
+}
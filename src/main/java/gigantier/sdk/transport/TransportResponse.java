@@ -0,0 +1,83 @@
+package gigantier.sdk.transport;
+
+import com.android.volley.toolbox.ByteArrayPool;
+import com.android.volley.toolbox.PoolingByteArrayOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TransportResponse {
+
+  public final int statusCode;
+  public final Map<String, String> headers;
+  public final InputStream body;
+  public final long contentLength;
+
+  /**
+   * @param contentLength body length in bytes, or -1 if unknown
+   */
+  public TransportResponse(int statusCode, Map<String, String> headers, InputStream body, long contentLength) {
+    this.statusCode = statusCode;
+    this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    if (headers != null) this.headers.putAll(headers);
+    this.body = body;
+    this.contentLength = contentLength;
+  }
+
+  public boolean isSuccessful() {
+    return statusCode >= 200 && statusCode < 300;
+  }
+
+  /**
+   * Read and drop what is left of the body, then close it, so its connection can be reused, like
+   * before retrying the request.
+   */
+  public void discard() {
+    try {
+      byte[] buffer = new byte[4096];
+      while (body.read(buffer) != -1) {
+        // dropped
+      }
+    } catch (IOException e) {
+      // the connection is not reused
+    } finally {
+      try {
+        body.close();
+      } catch (IOException e) {
+        // already released
+      }
+    }
+  }
+
+  /**
+   * Read the whole body.
+   */
+  public byte[] readBody() throws IOException {
+    return read(body, contentLength, null);
+  }
+
+  /**
+   * Read a stream fully, with buffers taken from the given pool.
+   *
+   * @param sizeHint expected size in bytes, or -1 if unknown
+   * @param pool buffer pool, or null
+   */
+  public static byte[] read(InputStream in, long sizeHint, ByteArrayPool pool) throws IOException {
+    int size = sizeHint > 0 ? (int) sizeHint : 1024;
+    ByteArrayOutputStream out = pool != null ? new PoolingByteArrayOutputStream(pool, size) : new ByteArrayOutputStream(size);
+    byte[] buffer = pool != null ? pool.getBuf(4096) : new byte[4096];
+
+    try {
+      int count;
+      while ((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+      return out.toByteArray();
+    } finally {
+      if (pool != null) pool.returnBuf(buffer);
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+package gigantier.sdk.transport;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import gigantier.sdk.utils.Constants;
+
+/**
+ * Transport based on a Volley request queue, over HttpURLConnection. Volley reads the whole
+ * response before calling back, so the time to first byte of its calls includes the body.
+ */
+public class VolleyTransport implements Transport {
+
+  private final int threads;
+  private RequestQueue requestQueue;
+
+  public VolleyTransport() {
+    this(Constants.NETWORK_THREADS);
+  }
+
+  /**
+   * @param threads network dispatcher threads
+   */
+  public VolleyTransport(int threads) {
+    this.threads = threads;
+  }
+
+  @Override
+  public void execute(final TransportRequest request, final TransportCallback callback) {
+    RawRequest rawRequest = new RawRequest(request, callback);
+    // HttpURLConnection gets the same timeout for connect and read
+    rawRequest.setRetryPolicy(new DefaultRetryPolicy(Math.max(request.connectTimeout, request.readTimeout), 0, 0));
+    rawRequest.setShouldCache(false);
+    if (request.tag != null) rawRequest.setTag(request.tag);
+    getRequestQueue().add(rawRequest);
+  }
+
+  @Override
+  public void cancel(final Object tag) {
+    getRequestQueue().cancelAll(tag);
+  }
+
+  private synchronized RequestQueue getRequestQueue() {
+    if (requestQueue == null) {
+      // responses are delivered on the network thread, the gateway takes care of the final delivery
+      requestQueue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), threads,
+          new ExecutorDelivery(Runnable::run));
+      requestQueue.start();
+    }
+    return requestQueue;
+  }
+
+  private static int methodOf(final String method) {
+    switch (method) {
+      case "GET": return Request.Method.GET;
+      case "PUT": return Request.Method.PUT;
+      case "DELETE": return Request.Method.DELETE;
+      case "HEAD": return Request.Method.HEAD;
+      case "PATCH": return Request.Method.PATCH;
+      default: return Request.Method.POST;
+    }
+  }
+
+  private static TransportResponse toResponse(final NetworkResponse response) {
+    byte[] data = response.data != null ? response.data : new byte[0];
+    return new TransportResponse(response.statusCode, response.headers, new ByteArrayInputStream(data), data.length);
+  }
+
+  private static class RawRequest extends Request<TransportResponse> {
+
+    private final TransportRequest request;
+    private final TransportCallback callback;
+
+    RawRequest(TransportRequest request, TransportCallback callback) {
+      super(methodOf(request.method), request.url, null);
+      this.request = request;
+      this.callback = callback;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return request.headers != null ? request.headers : Collections.emptyMap();
+    }
+
+    @Override
+    public String getBodyContentType() {
+      return request.contentType;
+    }
+
+    @Override
+    public byte[] getBody() {
+      return request.body;
+    }
+
+    @Override
+    public Priority getPriority() {
+      switch (request.priority) {
+        case IMMEDIATE: return Priority.IMMEDIATE;
+        case BACKGROUND: return Priority.LOW;
+        case PREFETCH: return Priority.LOW;
+        default: return Priority.NORMAL;
+      }
+    }
+
+    @Override
+    protected Response<TransportResponse> parseNetworkResponse(NetworkResponse response) {
+      return Response.success(toResponse(response), null);
+    }
+
+    @Override
+    protected void deliverResponse(TransportResponse response) {
+      callback.onResponse(response);
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+      if (error.networkResponse != null) callback.onResponse(toResponse(error.networkResponse));
+      else callback.onFailure(error);
+    }
+
+  }
+
+}
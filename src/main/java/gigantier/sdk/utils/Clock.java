@@ -0,0 +1,14 @@
+package gigantier.sdk.utils;
+
+import android.os.SystemClock;
+
+/**
+ * Monotonic time source, in millis, of rate limits and circuit breakers.
+ */
+public interface Clock {
+
+  Clock ELAPSED_REALTIME = SystemClock::elapsedRealtime;
+
+  long now();
+
+}
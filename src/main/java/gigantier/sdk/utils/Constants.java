@@ -16,6 +16,46 @@ public class Constants {
   final public static String SDK_LANG_HEADER = "X-GIGANTIER-SDK-LANGUAGE";
   final public static String SDK_VERSION_HEADER = "X-GIGANTIER-SDK-VERSION";
   final public static String SDK_APP_HEADER = "X-GIGANTIER-APPLICATION";
+  final public static float REFRESH_AHEAD_FRACTION = 0.8f;
+  final public static float REFRESH_AHEAD_JITTER = 0.05f;
+  final public static long IDLE_TIMEOUT = 5 * 60 * 1000;
+  final public static int BATCH_PARALLELISM = 4;
+  final public static int PAGE_PREFETCH = 1;
+  final public static String PAGE_OFFSET_PARAM = "offset";
+  final public static String PAGE_LIMIT_PARAM = "limit";
+  final public static int MAX_IDLE_CONNECTIONS = 5;
+  final public static long KEEP_ALIVE = 5 * 60 * 1000;
+  final public static int MAX_REQUESTS = 64;
+  final public static int MAX_REQUESTS_PER_HOST = 64;
+  final public static int CONNECT_TIMEOUT = 10 * 1000;
+  final public static int READ_TIMEOUT = 30 * 1000;
+  final public static long CALL_DEADLINE = 0;
+  final public static int ERROR_DEADLINE_EXCEEDED = -2;
+  final public static int ERROR_REJECTED = -3;
+  final public static int ERROR_RATE_LIMITED = -4;
+  final public static int ERROR_CIRCUIT_OPEN = -5;
+  final public static int MAX_QUEUED_REQUESTS = 256;
+  final public static long RETRY_INITIAL_BACKOFF = 500;
+  final public static long RETRY_MAX_BACKOFF = 30 * 1000;
+  final public static float RETRY_BUDGET_RATIO = 0.1f;
+  final public static int RETRY_BUDGET_MAX = 10;
+  final public static int MAX_RATE_LIMITED_REQUESTS = 128;
+  final public static long RATE_LIMIT_PAUSE = 1000;
+  final public static long RATE_LIMIT_MAX_PAUSE = 60 * 1000;
+  final public static long CIRCUIT_WINDOW_DURATION = 60 * 1000;
+  final public static long CIRCUIT_SLOW_CALL_DURATION = 5 * 1000;
+  final public static long CIRCUIT_OPEN_DURATION = 5 * 1000;
+  final public static long CIRCUIT_MAX_OPEN_DURATION = 60 * 1000;
+  final public static int MAX_CIRCUITS = 64;
+  final public static String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  final public static int BUFFER_POOL_SIZE = 64 * 1024;
+  final public static String GZIP = "gzip";
+  final public static int MAX_METRICS_ENDPOINTS = 64;
+  final public static String OFFLINE_QUEUE_DIR = "gigantier-offline";
+  final public static int OFFLINE_PARALLELISM = 2;
+  final public static String DISK_CACHE_DIR = "gigantier-responses";
+  final public static long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+  final public static int NETWORK_THREADS = 4;
 
 
 }
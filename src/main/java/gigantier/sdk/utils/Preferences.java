@@ -2,11 +2,11 @@ package gigantier.sdk.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.util.Log;
 
-import java.util.Date;
+import gigantier.sdk.auth.Token;
+import gigantier.sdk.auth.TokenStorage;
 
-public class Preferences {
+public class Preferences implements TokenStorage {
 
   private static final String USER_TOKEN = "usertoken";
   private static final String USER_TOKEN_EXPIRES = "usertokenexpires";
@@ -15,12 +15,31 @@ public class Preferences {
   private static final String APP_TOKEN_EXPIRES = "apptokenexpires";
   private static final String APP_REFRESH_TOKEN = "apprefreshtoken";
 
+  private final Context context;
   private SharedPreferences.Editor editor;
   private SharedPreferences sharedPreferences;
 
+  /**
+   * The preferences file is opened on first use, not here.
+   */
   public Preferences(Context context) {
-    this.sharedPreferences = context.getSharedPreferences(Constants.PREFERENCES_NAME, Context.MODE_PRIVATE);
-    this.editor = this.sharedPreferences.edit();
+    this.context = context;
+  }
+
+  @Override
+  public Token load(String type) {
+    if (APP.equals(type)) return new Token(getAppToken(), getAppRefreshToken(), getAppTokenExpiration());
+    else return new Token(getUserToken(), getUserRefreshToken(), getUserTokenExpiration());
+  }
+
+  @Override
+  public void save(String type, Token token) {
+    boolean app = APP.equals(type);
+    SharedPreferences.Editor editor = editor();
+    editor.putString(app ? APP_TOKEN : USER_TOKEN, token.accessToken);
+    editor.putString(app ? APP_REFRESH_TOKEN : USER_REFRESH_TOKEN, token.refreshToken);
+    editor.putLong(app ? APP_TOKEN_EXPIRES : USER_TOKEN_EXPIRES, token.expiresAt);
+    editor.apply();
   }
 
   public void resetAppToken() {
@@ -91,57 +110,55 @@ public class Preferences {
     return getLong(USER_TOKEN_EXPIRES);
   }
 
+  private synchronized SharedPreferences preferences() {
+    if (sharedPreferences == null) {
+      sharedPreferences = context.getSharedPreferences(Constants.PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+    return sharedPreferences;
+  }
+
+  private synchronized SharedPreferences.Editor editor() {
+    if (editor == null) editor = preferences().edit();
+    return editor;
+  }
+
   private String getString(String name) {
-    return sharedPreferences.getString(name, "");
+    return preferences().getString(name, "");
   }
 
   private int getInt(String name) {
-    return sharedPreferences.getInt(name, 0);
+    return preferences().getInt(name, 0);
   }
 
   private long getLong(String name) {
-    return sharedPreferences.getLong(name, 0);
+    return preferences().getLong(name, 0);
   }
 
   private boolean getBoolean(String name) {
-    return sharedPreferences.getBoolean(name, false);
+    return preferences().getBoolean(name, false);
   }
 
   private void setString(String name, String value) {
-    editor.putString(name, value);
-    editor.commit();
+    editor().putString(name, value).apply();
   }
 
   private void setInt(String name, int value) {
-    editor.putInt(name, value);
-    editor.commit();
+    editor().putInt(name, value).apply();
   }
 
   private void setLong(String name, long value) {
-    editor.putLong(name, value);
-    editor.commit();
+    editor().putLong(name, value).apply();
   }
 
   private void setBoolean(String name, boolean value) {
-    editor.putBoolean(name, value);
-    editor.commit();
+    editor().putBoolean(name, value).apply();
   }
 
   private void setTokenExpiration(String key, long expires) {
-    setLong(key, new Date().getTime() + (expires * 1000));
+    setLong(key, System.currentTimeMillis() + (expires * 1000));
   }
 
   private boolean isTokenExpired(String key) {
-    long dateLong = getLong(key);
-    Date expireDate = new Date(dateLong);
-    Date currentDate = new Date();
-
-    Log.d("gigantier", "dateLong " + dateLong);
-    Log.d("gigantier", "expireDate " + expireDate);
-    Log.d("gigantier", "currentDate " + currentDate);
-    Log.d("gigantier", "currentDate.after(expireDate) " + (currentDate.after(expireDate)));
-    Log.d("gigantier", "!\"\".equals(getAppToken() " + (!"".equals(getAppToken())));
-
-    return currentDate.after(expireDate) && !"".equals(getAppToken());
+    return System.currentTimeMillis() > getLong(key) && !"".equals(getAppToken());
   }
 }